@@ -0,0 +1,111 @@
+package fireeffect.bench;
+
+import fireeffect.ConvolutionEngine;
+import fireeffect.FireImageWriter;
+import fireeffect.FireModel;
+import fireeffect.NoiseSource;
+import javafx.scene.image.WritableImage;
+import javafx.scene.image.WritablePixelFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.IntBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot paths of one simulation frame: seeding, convolution (classic and waves of fire)
+ * and the copy of fireBuf into the WritableImage, in the negotiated and in the IntArgb format.
+ * Pick engines with {@code -p engine=sequential,banded,swar,vector} and seed noise
+ * with {@code -p noise=xorshift,splittable,table}.
+ * @author cpdea
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Dprism.order=sw"})
+public class FireModelBenchmark {
+
+    @Param({"320x240", "640x480", "1280x720", "1920x1080", "2560x1440", "3840x2160"})
+    public String resolution;
+
+    @Param({"sequential"})
+    public String engine;
+
+    @Param({"xorshift"})
+    public String noise;
+
+    FireModel fireModel;
+    FireImageWriter imageWriter;
+    WritablePixelFormat<IntBuffer> pixelFormat;
+
+    @Setup
+    public void setup() {
+        String[] dims = resolution.split("x");
+        fireModel = new FireModel(Integer.parseInt(dims[0]), Integer.parseInt(dims[1]));
+        fireModel.engine = ConvolutionEngine.named(engine);
+        fireModel.noise = NoiseSource.named(noise, 42);
+        fireModel.shift1 = 16;
+        fireModel.shift2 = 8;
+        fireModel.shift3 = 1;
+        imageWriter = new FireImageWriter(fireModel);
+        pixelFormat = WritablePixelFormat.getIntArgbInstance();
+        // let the flames climb so the convolution works on a realistic field
+        for (int i = 0; i < 64; i++) {
+            fireModel.genRandomFireRowWidth();
+            fireModel.copyFireRowBottom();
+            fireModel.convolution();
+        }
+    }
+
+    @Benchmark
+    public int[] genRandomFireRowWidth() {
+        fireModel.genRandomFireRowWidth();
+        return fireModel.bottomRow;
+    }
+
+    @Benchmark
+    public int copyFireRowBottom() {
+        fireModel.copyFireRowBottom();
+        return fireModel.getHeat(0, fireModel.screenHeight - 1);
+    }
+
+    @Benchmark
+    public int[] convolutionClassic() {
+        fireModel.classic = true;
+        fireModel.genRandomFireRowWidth();
+        fireModel.copyFireRowBottom();
+        fireModel.convolution();
+        return fireModel.fireBuf;
+    }
+
+    @Benchmark
+    public int[] convolutionWaves() {
+        fireModel.classic = false;
+        fireModel.genRandomFireRowWidth();
+        fireModel.copyFireRowBottom();
+        fireModel.convolution();
+        return fireModel.fireBuf;
+    }
+
+    @Benchmark
+    public WritableImage copyWritable() {
+        return imageWriter.copyWritable();
+    }
+
+    /** Non premultiplied IntArgb into the image, converted pixel by pixel by the toolkit. */
+    @Benchmark
+    public WritableImage copyWritableIntArgb() {
+        return imageWriter.copyWritable(pixelFormat);
+    }
+}
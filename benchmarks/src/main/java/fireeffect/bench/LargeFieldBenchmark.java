@@ -0,0 +1,68 @@
+package fireeffect.bench;
+
+import fireeffect.ConvolutionEngine;
+import fireeffect.FireModel;
+import fireeffect.NoiseSource;
+import fireeffect.TiledConvolution;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Row pass against column strips on 4K and 8K fields.
+ * The memory traffic per frame shows with {@code -prof perfnorm} (L1-dcache-load-misses,
+ * LLC-load-misses per op), e.g.
+ * {@code java -jar target/benchmarks.jar LargeFieldBenchmark -prof perfnorm}.
+ * @author cpdea
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class LargeFieldBenchmark {
+
+    @Param({"3840x2160", "7680x4320"})
+    public String resolution;
+
+    @Param({"sequential", "tiled"})
+    public String engine;
+
+    @Param({"" + TiledConvolution.DEFAULT_STRIP_WIDTH})
+    public int stripWidth;
+
+    FireModel fireModel;
+
+    @Setup
+    public void setup() {
+        String[] dims = resolution.split("x");
+        fireModel = new FireModel(Integer.parseInt(dims[0]), Integer.parseInt(dims[1]));
+        fireModel.engine = "tiled".equals(engine) ? new TiledConvolution(stripWidth) : ConvolutionEngine.named(engine);
+        fireModel.noise = NoiseSource.named("xorshift", 42);
+        // let the flames climb to their full height
+        for (int i = 0; i < 300; i++) {
+            fireModel.genRandomFireRowWidth();
+            fireModel.copyFireRowBottom();
+            fireModel.convolution();
+        }
+    }
+
+    @Benchmark
+    public int[] convolution() {
+        fireModel.genRandomFireRowWidth();
+        fireModel.copyFireRowBottom();
+        fireModel.convolution();
+        return fireModel.fireBuf;
+    }
+}
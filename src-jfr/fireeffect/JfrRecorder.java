@@ -0,0 +1,102 @@
+package fireeffect;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The Flight Recorder events behind {@link FireEvents}, compiled separately (src-jfr) so the
+ * core does not depend on jdk.jfr. With recording off begin and end do nothing, finish only
+ * tests shouldCommit and the event object is scalar replaced by the JIT, so the events can
+ * stay in production builds.
+ * @author cpdea
+ */
+final class JfrRecorder implements FireEvents.Recorder {
+
+    @Override
+    public FireEvents.Span begin(FireEvents.Stage stage) {
+        StageEvent event;
+        switch (stage) {
+            case SEED: event = new Seed(); break;
+            case CONVOLUTION: event = new Convolution(); break;
+            case UPLOAD: event = new Upload(); break;
+            case BUFFER_UPDATE: event = new BufferUpdate(); break;
+            default: event = new Present(); break;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Category("FireEffect")
+    @StackTrace(false)
+    abstract static class StageEvent extends Event implements FireEvents.Span {
+        @Label("Frame")
+        @Description("Frames convolved by the model before this stage")
+        long frame;
+
+        @Label("Width")
+        int width;
+
+        @Label("Height")
+        int height;
+
+        @Label("Mode")
+        @Description("Engine, noise source or pixel format the stage ran with")
+        String mode;
+
+        @Label("Bytes")
+        @Description("Bytes written by the stage")
+        @DataAmount
+        long bytes;
+
+        /**
+         * The mode is only turned into a name when the event is committed.
+         */
+        @Override
+        public void finish(long frame, int width, int height, Object mode, long bytes) {
+            end();
+            if (shouldCommit()) {
+                this.frame = frame;
+                this.width = width;
+                this.height = height;
+                this.mode = FireEvents.modeName(mode);
+                this.bytes = bytes;
+                commit();
+            }
+        }
+    }
+
+    @Name("fireeffect.Seed")
+    @Label("Seed Row")
+    @Description("Noise written into the bottom row")
+    static final class Seed extends StageEvent {
+    }
+
+    @Name("fireeffect.Convolution")
+    @Label("Convolution")
+    @Description("One frame of the fire stencil, colorized")
+    static final class Convolution extends StageEvent {
+    }
+
+    @Name("fireeffect.Upload")
+    @Label("Upload")
+    @Description("Colorized frame copied into a WritableImage with setPixels")
+    static final class Upload extends StageEvent {
+    }
+
+    @Name("fireeffect.BufferUpdate")
+    @Label("Buffer Update")
+    @Description("PixelBuffer.updateBuffer of the rows that changed")
+    static final class BufferUpdate extends StageEvent {
+    }
+
+    @Name("fireeffect.Present")
+    @Label("Present")
+    @Description("Frame drawn on the FX thread by the AnimationTimer")
+    static final class Present extends StageEvent {
+    }
+}
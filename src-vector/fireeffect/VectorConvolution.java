@@ -0,0 +1,102 @@
+package fireeffect;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Convolution engine using the incubating Java Vector API (JDK 16+).
+ *
+ * The heat bytes are widened to int lanes, then the four taps, the decay multiply and
+ * shift and the palette lookup all run in vector registers, the palette lookup being a
+ * gather indexed by the freshly computed heat.
+ * The wrap-around columns and the tail of each row that does not fill a vector use the
+ * scalar formula from {@link FireKernel}.
+ *
+ * Run with {@code --add-modules jdk.incubator.vector -Dfireeffect.engine=vector}.
+ * @author cpdea
+ */
+public class VectorConvolution implements ConvolutionEngine {
+    // at least eight int lanes (AVX2), the heat bytes are loaded with a matching byte shape
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED.length() >= 8
+            ? IntVector.SPECIES_PREFERRED : IntVector.SPECIES_256;
+    private static final VectorSpecies<Byte> BYTES =
+            VectorSpecies.of(byte.class, VectorShape.forBitSize(INTS.length() * Byte.SIZE));
+
+    private int[] lut;
+    private final int[] indexes = new int[INTS.length()];
+    private int[] rowPixels = new int[0];
+
+    @Override
+    public void convolve(FireModel model) {
+        int w = model.screenWidth;
+        int h = model.screenHeight;
+        byte[] fire = model.fire;
+        // gather straight into fireBuf, or into one row that is handed to the pixel target
+        boolean direct = model.pixelTarget == null;
+        if (!direct && rowPixels.length < w) {
+            rowPixels = new int[w];
+        }
+
+        // the compiled table of this frame, classic or shifted
+        lut = model.lut;
+
+        for (int y = model.firstActiveRow; y < h - 1; y++) {
+            int r1 = y + 1, r2 = y + 2, r3 = y + 3;
+            if (r3 >= h) {
+                r1 %= h;
+                r2 %= h;
+                r3 %= h;
+            }
+            if (direct) {
+                convolveRow(fire, model.fireBuf, y * w, y * w, r1 * w, r2 * w, r3 * w, w);
+            } else {
+                convolveRow(fire, rowPixels, 0, y * w, r1 * w, r2 * w, r3 * w, w);
+                model.writeRow(y, rowPixels);
+            }
+        }
+    }
+
+    private void convolveRow(byte[] fire, int[] pixels, int out, int row, int o1, int o2, int o3, int w) {
+        int last = w - 1;
+        scalar(fire, pixels, out, row, 0, o1 + last, o2, o1 + (last > 0 ? 1 : 0), o3);
+
+        int x = 1;
+        int upper = last - INTS.length();
+        for (; x <= upper; x += INTS.length()) {
+            IntVector sum = load(fire, o1 + x - 1)
+                    .add(load(fire, o2 + x))
+                    .add(load(fire, o1 + x + 1))
+                    .add(load(fire, o3 + x));
+            IntVector heat = sum.mul(FireKernel.DECAY_MULTIPLIER)
+                    .lanewise(VectorOperators.LSHR, FireKernel.DECAY_SHIFT);
+            ((ByteVector) heat.convertShape(VectorOperators.I2B, BYTES, 0)).intoArray(fire, row + x);
+            heat.intoArray(indexes, 0);
+            IntVector.fromArray(INTS, lut, 0, indexes, 0).intoArray(pixels, out + x);
+        }
+        for (; x < last; x++) {
+            scalar(fire, pixels, out, row, x, o1 + x - 1, o2 + x, o1 + x + 1, o3 + x);
+        }
+
+        if (last > 0) {
+            scalar(fire, pixels, out, row, last, o1 + last - 1, o2 + last, o1, o3 + last);
+        }
+    }
+
+    /** Zero extended heat bytes as int lanes. */
+    private static IntVector load(byte[] fire, int offset) {
+        return ((IntVector) ByteVector.fromArray(BYTES, fire, offset)
+                .convertShape(VectorOperators.B2I, INTS, 0))
+                .and(0xFF);
+    }
+
+    private void scalar(byte[] fire, int[] pixels, int out, int row, int x,
+                        int left, int below2, int right, int below3) {
+        int heat = FireKernel.decay((fire[left] & 0xFF) + (fire[below2] & 0xFF)
+                + (fire[right] & 0xFF) + (fire[below3] & 0xFF));
+        fire[row + x] = (byte) heat;
+        pixels[out + x] = lut[heat];
+    }
+}
@@ -0,0 +1,109 @@
+package fireeffect;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits the convolution into horizontal row bands that run on a ForkJoinPool.
+ *
+ * Row y only reads rows y+1..y+3 of the previous frame, so bands are independent except
+ * for the last three rows of each band, which read the first rows of the band below it.
+ * Those rows (the halo) are copied before the bands are forked. The two rows just above
+ * the seed row wrap around to rows 0 and 1 of the current frame, so they are computed
+ * after all bands have joined. The result is bit-identical to the sequential pass.
+ * @author cpdea
+ */
+public class BandedConvolution implements ConvolutionEngine {
+    static final int HALO_ROWS = 3;
+    static final int MIN_BAND_ROWS = 16;
+
+    private final ForkJoinPool pool;
+    private byte[][] halos = new byte[0][];
+    private int haloWidth;
+
+    public BandedConvolution() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public BandedConvolution(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void convolve(FireModel model) {
+        int w = model.screenWidth;
+        int h = model.screenHeight;
+        // rows [top, bandedRows) are split, the last HALO_ROWS - 1 rows above the seed row wrap
+        int top = model.firstActiveRow;
+        int bandedRows = h - HALO_ROWS;
+        int bands = Math.min(pool.getParallelism() * 2, (bandedRows - top) / MIN_BAND_ROWS);
+        if (bands < 2) {
+            model.convolveRows(top, h - 1);
+            return;
+        }
+        ensureHalos(bands - 1, w);
+
+        int[] starts = new int[bands + 1];
+        for (int i = 0; i <= bands; i++) {
+            starts[i] = top + (int) ((long) (bandedRows - top) * i / bands);
+        }
+        // snapshot the first rows of every band below the first one before anything is written
+        for (int i = 0; i < bands - 1; i++) {
+            System.arraycopy(model.fire, starts[i + 1] * w, halos[i], 0, HALO_ROWS * w);
+        }
+
+        RecursiveAction[] tasks = new RecursiveAction[bands];
+        for (int i = 0; i < bands; i++) {
+            final int start = starts[i];
+            final int end = starts[i + 1];
+            final byte[] halo = i < bands - 1 ? halos[i] : null;
+            tasks[i] = new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    convolveBand(model, start, end, halo);
+                }
+            };
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+
+        // the remaining rows read rows 0 and 1 of this frame
+        model.convolveRows(bandedRows, h - 1);
+    }
+
+    private void ensureHalos(int count, int width) {
+        if (halos.length < count || haloWidth != width) {
+            halos = new byte[count][HALO_ROWS * width];
+            haloWidth = width;
+        }
+    }
+
+    /**
+     * Convolve rows [start, end). When a halo is given, reads at or past row {@code end}
+     * come from the halo snapshot because the band below may already have overwritten them.
+     */
+    private static void convolveBand(FireModel model, int start, int end, byte[] halo) {
+        if (halo == null) {
+            model.convolveRows(start, end);
+            return;
+        }
+        int haloStart = Math.max(start, end - HALO_ROWS);
+        model.convolveRows(start, haloStart);
+
+        int w = model.screenWidth;
+        byte[] fire = model.fire;
+        for (int y = haloStart; y < end; y++) {
+            int r1 = y + 1, r2 = y + 2, r3 = y + 3;
+            FireKernel.convolveRow(fire, y * w,
+                    r1 < end ? fire : halo, (r1 < end ? r1 : r1 - end) * w,
+                    r2 < end ? fire : halo, (r2 < end ? r2 : r2 - end) * w,
+                    halo, (r3 - end) * w,
+                    w);
+            model.colorizeRow(y);
+        }
+    }
+}
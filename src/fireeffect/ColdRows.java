@@ -0,0 +1,45 @@
+package fireeffect;
+
+import java.util.Arrays;
+
+/**
+ * Remembers, for the last few output targets, how many of their top rows already hold the
+ * cold color (heat 0 of a given palette table), so frames rotating through a triple buffer
+ * do not fill the black top of the window again every frame.
+ * @author cpdea
+ */
+final class ColdRows {
+    private final Object[] targets = new Object[4];
+    private final int[][] luts = new int[targets.length][];
+    private final int[] rows = new int[targets.length];
+    private int nextSlot;
+
+    /**
+     * Record that rows [0, top) of {@code target} will hold {@code lut[0]} after this frame.
+     * @return how many top rows already held it, the caller fills the rest
+     */
+    int claim(Object target, int[] lut, int top) {
+        int slot = 0;
+        while (slot < targets.length && targets[slot] != target) {
+            slot++;
+        }
+        if (slot == targets.length) {
+            slot = nextSlot;
+            nextSlot = (nextSlot + 1) % targets.length;
+            targets[slot] = target;
+            luts[slot] = null;
+        }
+        int filled = luts[slot] == lut ? rows[slot] : 0;
+        luts[slot] = lut;
+        rows[slot] = top;
+        return filled;
+    }
+
+    /**
+     * Forget every target, e.g. when their contents were changed elsewhere.
+     */
+    void clear() {
+        Arrays.fill(targets, null);
+        Arrays.fill(luts, null);
+    }
+}
@@ -0,0 +1,64 @@
+package fireeffect;
+
+/**
+ * Strategy used by {@link FireModel#convolution()} to advance the fire one frame.
+ * Every engine must leave {@code fire} and {@code fireBuf} exactly as the sequential
+ * top-down pass would, so they can be swapped without changing how the model is driven.
+ * Rows above {@code model.firstActiveRow} are cold and stay cold, engines start there.
+ * The engine is picked with the {@code fireeffect.engine} system property, e.g.
+ * {@code -Dfireeffect.engine=banded}.
+ * @author cpdea
+ */
+public interface ConvolutionEngine {
+    String ENGINE_PROPERTY = "fireeffect.engine";
+
+    /** Single threaded in-place pass over the active rows using {@link FireKernel}. */
+    ConvolutionEngine SEQUENTIAL = model -> model.convolveRows(model.firstActiveRow, model.screenHeight - 1);
+
+    /** The original per pixel modulo formulation over every row, slow but obviously correct. */
+    ConvolutionEngine REFERENCE = model -> model.convolveReference(0, model.screenHeight - 1);
+
+    void convolve(FireModel model);
+
+    /**
+     * Look up an engine by name. Unknown or missing names fall back to the sequential pass.
+     * @param name sequential, reference, banded, swar, tiled or vector
+     * @return a new engine instance; engines may hold per model scratch buffers
+     */
+    static ConvolutionEngine named(String name) {
+        if (name == null) {
+            return SEQUENTIAL;
+        }
+        switch (name.trim().toLowerCase()) {
+            case "banded":
+                return new BandedConvolution();
+            case "sequential":
+                return SEQUENTIAL;
+            case "reference":
+                return REFERENCE;
+            case "swar":
+                return new SwarConvolution();
+            case "tiled":
+                return new TiledConvolution();
+            case "vector":
+                return vectorOrSequential();
+            default:
+                System.out.println("Unknown convolution engine '" + name + "', using sequential.");
+                return SEQUENTIAL;
+        }
+    }
+
+    /**
+     * The Vector API engine is compiled separately (src-vector) and needs
+     * {@code --add-modules jdk.incubator.vector}, so it is only loaded on request.
+     */
+    static ConvolutionEngine vectorOrSequential() {
+        try {
+            return (ConvolutionEngine) Class.forName("fireeffect.VectorConvolution")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.out.println("Vector API engine unavailable (" + e + "), using sequential.");
+            return SEQUENTIAL;
+        }
+    }
+}
@@ -1,28 +1,23 @@
 package fireeffect;
 
-import javafx.animation.Animation;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import javafx.animation.PauseTransition;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.util.Duration;
 
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
-
 /**
  * Debouncing upon change on a property. A common use case is
  * a search text field as the user is typing characters to begin
  * query when the user pauses typing a specified time.
- * When a JavaFX property is invalidated or changing value
- * kill other pending delayedActions and spawn a new timer task.
+ * When a JavaFX property is changing value the action runs once
+ * the changes paused (see {@link Debouncer.Mode} for the other modes).
+ * The timer is one reusable pause transition, so the listener and the
+ * action run on the JavaFX ui thread.
  * @author cpdea
  */
-public class DebounceDispatcher<T> implements ChangeListener<T> {
-    static long counter;
-    private Queue<Timeline> delayedActions = new ConcurrentLinkedQueue<>();
-    private Runnable action;
-    private long delay = 500l; // half a second
+public class DebounceDispatcher<T> extends Debouncer implements ChangeListener<T> {
+    private final PauseTransition timer = new PauseTransition();
+    private long armedNanos = -1;  // duration the timer was last set to
 
     /**
      * Constructor to debounce action to be performed.
@@ -32,59 +27,52 @@ public class DebounceDispatcher<T> implements ChangeListener<T> {
      * @param delay delay to perform action.
      */
     public DebounceDispatcher(Runnable action, long delay){
-        this.action = action;
-        this.delay = delay;
+        this();
+        setAction(action);
+        setDelay(delay);
     }
     public DebounceDispatcher(){
+        timer.setOnFinished(event -> timerExpired());
     }
     public DebounceDispatcher(long delay){
-        this.delay = delay;
+        this();
+        setDelay(delay);
     }
 
-    public DebounceDispatcher onAction(Runnable action) {
-        this.action = action;
-        return this;
-    }
-    public DebounceDispatcher delayMillis(long delay) {
-        this.delay = delay;
+    @Override
+    public DebounceDispatcher<T> onAction(Runnable action) {
+        super.onAction(action);
         return this;
     }
 
-    public Runnable getAction() {
-        return action;
+    @Override
+    public DebounceDispatcher<T> delayMillis(long delay) {
+        super.delayMillis(delay);
+        return this;
     }
 
-    public void setAction(Runnable action) {
-        this.action = action;
+    @Override
+    public DebounceDispatcher<T> mode(Mode mode) {
+        super.mode(mode);
+        return this;
     }
 
-    public long getDelay() {
-        return delay;
+    @Override
+    protected void arm(long nanos) {
+        if (nanos != armedNanos) {
+            timer.setDuration(Duration.millis(nanos / 1e6));
+            armedNanos = nanos;
+        }
+        timer.playFromStart();
     }
 
-    public void setDelay(long delay) {
-        this.delay = delay;
+    @Override
+    protected void disarm() {
+        timer.stop();
     }
 
     @Override
     public void changed(ObservableValue<? extends T> observable, T oldValue, T newValue) {
-        // Kill all delayed actions
-        delayedActions.forEach(delayedAction -> {
-            delayedAction.pause();
-            delayedAction.stop();
-        });
-        delayedActions.clear();
-
-        // Create a delayed action
-        KeyFrame delayedAction = new KeyFrame(Duration.millis(getDelay()), "workTask #" + counter++, event -> {
-            if (getAction() != null) {
-                getAction().run();
-            }
-        });
-        Timeline timeline = new Timeline(delayedAction);
-
-        // spawn latest task.
-        delayedActions.add(timeline);
-        timeline.playFromStart();
+        trigger();
     }
 }
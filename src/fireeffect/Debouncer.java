@@ -0,0 +1,157 @@
+package fireeffect;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces bursts of events (e.g. the width and height changes of a window drag) into few
+ * runs of an action. Subclasses supply the timer: {@link DebounceDispatcher} a JavaFX
+ * animation, {@link ScheduledDebouncer} a scheduled executor for code off the FX thread.
+ * <ul>
+ * <li>{@link Mode#TRAILING} runs the action once the events paused for the delay.</li>
+ * <li>{@link Mode#LEADING} runs it on the first event and ignores the rest of the burst,
+ * until the events paused for the delay.</li>
+ * <li>{@link Mode#THROTTLE} runs it on the first event and then at most once per delay
+ * while events keep coming, the last run comes after the last event.</li>
+ * </ul>
+ * Each instance arms one timer at a time. An event only stores its time, the timer checks on
+ * expiry whether the burst is over and otherwise sleeps again for the rest of the quiet
+ * period, so events allocate nothing and never restart the timer.
+ * @author cpdea
+ */
+public abstract class Debouncer {
+    public enum Mode {
+        LEADING, TRAILING, THROTTLE
+    }
+
+    private Runnable action;
+    private long delay = 500L; // milliseconds
+    private Mode mode = Mode.TRAILING;
+    private boolean armed;      // the timer is running
+    private boolean pending;    // events arrived that the action has not seen
+    private long lastEvent;     // System.nanoTime() of the latest event
+
+    /**
+     * Start the timer to call {@link #timerExpired()} after {@code nanos}.
+     */
+    protected abstract void arm(long nanos);
+
+    /**
+     * Stop the timer without calling {@link #timerExpired()}.
+     */
+    protected abstract void disarm();
+
+    public Debouncer onAction(Runnable action) {
+        this.action = action;
+        return this;
+    }
+
+    public Debouncer delayMillis(long delay) {
+        this.delay = delay;
+        return this;
+    }
+
+    public Debouncer mode(Mode mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    public Runnable getAction() {
+        return action;
+    }
+
+    public void setAction(Runnable action) {
+        this.action = action;
+    }
+
+    public long getDelay() {
+        return delay;
+    }
+
+    public void setDelay(long delay) {
+        this.delay = delay;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    private long delayNanos() {
+        return TimeUnit.MILLISECONDS.toNanos(delay);
+    }
+
+    /**
+     * Record one event of a burst.
+     */
+    public void trigger() {
+        boolean runNow;
+        synchronized (this) {
+            lastEvent = System.nanoTime();
+            if (armed) {
+                pending = true;
+                return;
+            }
+            armed = true;
+            runNow = mode != Mode.TRAILING;
+            pending = !runNow;
+            arm(delayNanos());
+        }
+        if (runNow) {
+            runAction();
+        }
+    }
+
+    /**
+     * Called by the subclass' timer.
+     */
+    protected final void timerExpired() {
+        boolean runNow = false;
+        synchronized (this) {
+            if (!armed) {
+                return;
+            }
+            if (mode == Mode.THROTTLE) {
+                runNow = pending;
+                pending = false;
+                armed = runNow;
+                if (runNow) {
+                    arm(delayNanos());
+                }
+            } else {
+                long remaining = lastEvent + delayNanos() - System.nanoTime();
+                if (remaining > 0) {
+                    // the burst goes on, wait for the rest of the quiet period
+                    arm(remaining);
+                } else {
+                    runNow = mode == Mode.TRAILING && pending;
+                    pending = false;
+                    armed = false;
+                }
+            }
+        }
+        if (runNow) {
+            runAction();
+        }
+    }
+
+    /**
+     * Drop the events not acted upon yet.
+     */
+    public synchronized void cancel() {
+        if (armed) {
+            disarm();
+        }
+        armed = false;
+        pending = false;
+    }
+
+    private void runAction() {
+        Runnable action = this.action;
+        if (action != null) {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package fireeffect;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritablePixelFormat;
+import javafx.scene.layout.GridPane;
+import javafx.scene.paint.Color;
+import javafx.stage.Stage;
+
+import java.nio.IntBuffer;
+
+/**
+ * Dashboard demo: a grid of small fires at different frame rates, all simulated on one
+ * {@link FireWorkerPool} instead of a thread per fire. Clicking a fire pauses or resumes it.
+ * The grid size is set with {@code -Dfireeffect.dashboard=<columns>x<rows>} (default 6x4).
+ * @author cpdea
+ */
+public class FireDashboard extends Application {
+    static final int FIRE_WIDTH = 160, FIRE_HEIGHT = 120;
+
+    FireWorkerPool pool;
+
+    @Override
+    public void start(Stage primaryStage) {
+        String[] grid = System.getProperty("fireeffect.dashboard", "6x4").split("x");
+        int columns = Integer.parseInt(grid[0].trim());
+        int rows = Integer.parseInt(grid[1].trim());
+
+        pool = new FireWorkerPool();
+        GridPane root = new GridPane();
+        root.setHgap(4);
+        root.setVgap(4);
+        root.setPadding(new Insets(4));
+
+        Cell[] cells = new Cell[columns * rows];
+        for (int i = 0; i < cells.length; i++) {
+            // 15, 30, 45 or 60 frames per second
+            cells[i] = new Cell(15 + (i % 4) * 15);
+            root.add(cells[i].canvas, i % columns, i / columns);
+        }
+
+        // present the newest frame of every fire, the workers never touch the canvases
+        AnimationTimer at = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                for (Cell cell : cells) {
+                    cell.present();
+                }
+            }
+        };
+        at.start();
+
+        primaryStage.setTitle(String.format("Fire Dashboard: %d fires on %d workers", cells.length, pool.getThreads()));
+        primaryStage.setScene(new Scene(root, Color.BLACK));
+        primaryStage.show();
+    }
+
+    @Override
+    public void stop() {
+        pool.close();
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        launch(args);
+    }
+
+    /**
+     * One fire: its canvas, the frames handed from the pool to the FX thread and the pool instance.
+     */
+    final class Cell {
+        final Canvas canvas = new Canvas(FIRE_WIDTH, FIRE_HEIGHT - 1);
+        final TripleBuffer<FireFrame> frames = new TripleBuffer<>(() -> {
+            FireFrame frame = new FireFrame();
+            frame.ensureSize(FIRE_WIDTH, FIRE_HEIGHT);
+            return frame;
+        });
+        final WritablePixelFormat<IntBuffer> pixelFormat;
+        final FireWorkerPool.Instance fire;
+
+        Cell(double framesPerSecond) {
+            FireModel model = new FireModel(FIRE_WIDTH, FIRE_HEIGHT);
+            // the pool runs the fires in parallel, each one on a single thread
+            model.engine = ConvolutionEngine.SEQUENTIAL;
+            pixelFormat = FireImageWriter.negotiate(model, canvas.getGraphicsContext2D().getPixelWriter());
+            model.setFrameBuffer(frames.back().pixels);
+            fire = pool.add(model, framesPerSecond, this::publish);
+            fire.start();
+            canvas.setOnMouseClicked(event -> {
+                if (fire.getState() == FireWorkerPool.State.RUNNING) {
+                    fire.pause();
+                } else {
+                    fire.start();
+                }
+            });
+        }
+
+        /**
+         * Worker: hand the finished frame to the FX thread and colorize the next one into the new back frame.
+         */
+        void publish(FireModel model) {
+            frames.back().frameNumber = model.frameCount;
+            frames.publish();
+            model.setFrameBuffer(frames.back().pixels);
+        }
+
+        void present() {
+            FireFrame frame = frames.latest();
+            if (frame != null) {
+                GraphicsContext gc = canvas.getGraphicsContext2D();
+                PixelWriter pw = gc.getPixelWriter();
+                // the seed row is never colorized
+                pw.setPixels(0, 0, FIRE_WIDTH, FIRE_HEIGHT - 1, pixelFormat, frame.pixels, 0, FIRE_WIDTH);
+                gc.setFill(Color.WHITE);
+                gc.fillText(String.format("%.0f/%.0f fps", fire.getAchievedRate(), fire.getRate()), 4, 12);
+            }
+        }
+    }
+}
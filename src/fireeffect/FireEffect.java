@@ -12,7 +12,6 @@ import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 
 import java.nio.IntBuffer;
-import java.util.Random;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.collections.FXCollections;
 import javafx.geometry.Insets;
@@ -23,7 +22,7 @@ import javafx.scene.control.ToggleGroup;
 import javafx.scene.layout.HBox;
 /**
  * Demo of fire effects with standard Java 8 using a writable image.
- * A 600 x 600 canvas, worker thread with a 17ms sleep and animation timer at 16ms delay.
+ * A 600 x 600 canvas, worker thread paced to 60 frames per second and animation timer at 16ms delay.
  * @author phillsm1
  * @author carldea
  */
@@ -31,11 +30,15 @@ public class FireEffect extends Application {
 
     SimpleBooleanProperty classic = new SimpleBooleanProperty(true);
     Canvas canvas;
-    int[] paletteAsInts; //this will contain the color palette
     int shift1, shift2, shift3;
     SimpleLongProperty workerTimes = new SimpleLongProperty(0);
     long workTimesMillis = 0;
 
+    // frame timings, also in JMX as fireeffect:type=FireMetrics
+    FireMetrics metrics = new FireMetrics();
+    volatile long uploadedSeedTime;     // seed time of the frame in the image
+    volatile long uploadedFrame;
+
     @Override
     public void start(Stage primaryStage) {
         canvas = new Canvas(600, 600);
@@ -90,63 +93,57 @@ public class FireEffect extends Application {
         int screenWidth = 600;
         int screenHeight = 600;
 
-        // Y-coordinate first because we use horizontal scanlines
-        int[] fire = new int[screenHeight * screenWidth];  //this buffer will contain the fire
-        int[] fireBuf = new int[screenHeight * screenWidth];
-        //int[] bottomRow = new int[screenWidth];
-        
+        // JavaFX free simulation, this class only shows its frames
+        FireModel fireModel = new FireModel(screenWidth, screenHeight);
+
         WritableImage writableImage = new WritableImage(screenWidth, screenHeight);
         PixelWriter pwBuffer = writableImage.getPixelWriter();
         PixelReader prBuffer = writableImage.getPixelReader();
-        WritablePixelFormat<IntBuffer> pixelFormat = WritablePixelFormat.getIntArgbInstance();
+        // frames are colorized in the image's native (premultiplied) layout
+        WritablePixelFormat<IntBuffer> pixelFormat = FireImageWriter.negotiate(fireModel, pwBuffer);
 
         GraphicsContext gc = canvas.getGraphicsContext2D();
         PixelWriter pw = gc.getPixelWriter();
-        
-        paletteAsInts = generateArgbPalette(256);
+
+        // simulation rate, -Dfireeffect.fps overrides it
+        FramePacer pacer = new FramePacer(FramePacer.rateFromProperties(60));
+        metrics.register("FireEffect");
 
         Task fireTask = new Task() {
             @Override
             protected Void call() throws Exception {
-                Random rand = new Random();
                 long startTime = 0;
                 long elapseTime = 0;
-                int fireStartHeight = (screenHeight - 1) * screenWidth;
+                metrics.registerWorker(Thread.currentThread());
                 //start the loop (one frame per loop)
                 while(!this.isCancelled() && !this.isDone()) {
                     // Start stop watch
                     startTime = System.currentTimeMillis();
+                    long seedTime = System.nanoTime();
 
                     //randomize the bottom row of the fire buffer
-//                    Arrays.parallelSetAll(bottomRow, value -> Math.abs(32768 + rand.nextInt(65536)) % 256);
-//                    System.arraycopy(bottomRow, 0, fire, fireStartHeight, screenWidth);
-                    for(int i=fireStartHeight; i<fireStartHeight+screenWidth; i++) {
-                        fire[i] = Math.abs(32768 + rand.nextInt(65536)) % 256;
-                    }
-                    int a, b, row, index, pixel;
-                    
-                    for (int y = 0; y < screenHeight - 1; y++) {
-                        for (int x = 0; x < screenWidth; x++) {
-                            a = (y + 1) % screenHeight * screenWidth;
-                            b = x % screenWidth;
-                            row = y * screenWidth;
-                            index = row + x;
-                            pixel = fire[index]
-                                    = ((fire[a + ((x - 1 + screenWidth) % screenWidth)]
-                                    + fire[((y + 2) % screenHeight) * screenWidth + b]
-                                    + fire[a + ((x + 1) % screenWidth)]
-                                    + fire[((y + 3) % screenHeight * screenWidth) + b])
-                                    * 128) / 513;
-                            fireBuf[index] = getPaletteValue(pixel);
-                        }
-                    }
+                    fireModel.genRandomFireRowWidth();
+                    fireModel.copyFireRowBottom();
+
+                    fireModel.classic = classic.get();
+                    fireModel.shift1 = shift1;
+                    fireModel.shift2 = shift2;
+                    fireModel.shift3 = shift3;
+                    fireModel.convolution();
+                    long uploadTime = System.nanoTime();
+                    metrics.recordSimulation(uploadTime - seedTime);
 
-                    pwBuffer.setPixels(0, 0, screenWidth, screenHeight, pixelFormat, fireBuf, 0, screenWidth);
+                    FireEvents.Span upload = FireEvents.begin(FireEvents.Stage.UPLOAD);
+                    pwBuffer.setPixels(0, 0, screenWidth, screenHeight, pixelFormat, fireModel.fireBuf, 0, screenWidth);
+                    upload.finish(fireModel.frameCount, screenWidth, screenHeight, pixelFormat.getType(), screenWidth * screenHeight * 4L);
+                    metrics.recordUpload(System.nanoTime() - uploadTime);
+                    uploadedSeedTime = seedTime;
+                    uploadedFrame = fireModel.frameCount;
                     elapseTime = System.currentTimeMillis() - startTime;
 //                    System.out.println("Worker thread takes : " + elapseTime + "ms");
                     workTimesMillis = elapseTime;
 
-                    Thread.sleep(17);
+                    pacer.awaitNextFrame();
                 }
                 return null;
             }
@@ -161,11 +158,24 @@ public class FireEffect extends Application {
             private final long ANIMATION_DELAY = 16 * NANOS_PER_MILLI;
             private double startTime;
             private double elapseTime;
+            private long presentedFrame;
             @Override
             public void handle(long now) {
                 if(now > lastTimerCall + ANIMATION_DELAY) {
-                    startTime = System.nanoTime();
+                    long presentTime = System.nanoTime();
+                    startTime = presentTime;
+                    long frame = uploadedFrame;
+                    if (frame == presentedFrame) {
+                        metrics.frameDuplicated();
+                    } else if (presentedFrame > 0) {
+                        // frames uploaded in between were overwritten before anyone saw them
+                        metrics.frameDropped(frame - presentedFrame - 1);
+                    }
+                    presentedFrame = frame;
+                    FireEvents.Span present = FireEvents.begin(FireEvents.Stage.PRESENT);
                     pw.setPixels(0, 0, screenWidth, screenHeight, prBuffer, 0, 0);
+                    present.finish(fireModel.frameCount, screenWidth, screenHeight, "PixelReader", screenWidth * screenHeight * 4L);
+                    metrics.recordFrameAge(uploadedSeedTime);
                     lastTimerCall = now;    //update for the next animation
                     elapseTime = (System.nanoTime() - startTime)/1e6;
 
@@ -175,48 +185,16 @@ public class FireEffect extends Application {
                     //System.out.println("UI Render thread takes : " + elapseTime + "ms");
                     elapseTime = (System.nanoTime() - startTime)/1e6;
                     gc.fillText("UI Render thread takes : " + elapseTime + "ms", 10, 30);
+                    gc.fillText(String.format("Simulation rate: %.1f fps (%d skipped)",
+                            pacer.getAchievedRate(), pacer.getSkippedFrames()), 10, 45);
+                    metrics.recordPresent(System.nanoTime() - presentTime);
+                    gc.fillText("Simulation " + metrics.getSimulation(), 10, 60);
+                    gc.fillText("Frame age " + metrics.getFrameAge(), 10, 75);
                 }
             }
         };
         at.start();
     }
-    private int getPaletteValue(int pixelIndex) {
-        if(classic.get())  
-            return paletteAsInts[pixelIndex];
-        int value = 0;
-        if(shift1 > -1)
-            value |= paletteAsInts[pixelIndex] << shift1; 
-        if(shift2 > -1)
-            value |= paletteAsInts[pixelIndex] << shift2; 
-        if(shift3 > -1)
-            value |= paletteAsInts[pixelIndex] << shift3;
-        return value;
-    }
-    
-    private int[] generateArgbPalette(int max ) {
-        int [] pal = new int[max];
-        //generate the palette
-        for (int x = 0; x < max; x++) {
-            //HSLtoRGB is used to generate colors:
-            //Hue goes from 0 to 85: red to yellow
-            //Saturation is always the maximum: 255
-            //Lightness is 0..255 for x=0..128, and 255 for x=128..255
-            //color = HSLtoRGB(ColorHSL(x / 3, 255, std::min(255, x * 2)));
-            //set the palette to the calculated RGB value
-            //palette[x] = RGBtoINT();
-            double brightness = Math.min(255, x*2) / 255.0;
-            Color color = Color.hsb(x / 3.0, 1.0, brightness , 1);
-            pal[x] = rgbToIntArgb(color);            
-        }
-        return pal;
-    }
-
-    private static int rgbToIntArgb(Color colorRGB) {
-      return (int)(colorRGB.getOpacity()*255) << 24 |
-             (int)(colorRGB.getRed()    *255) << 16 | 
-             (int)(colorRGB.getGreen()  *255) <<  8 | 
-             (int)(colorRGB.getBlue()   *255);
-    }    
 
 //    static Color INTtoRGB(int colorINT) {
 //      return new Color(
@@ -23,12 +23,11 @@ import javafx.stage.Stage;
 
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
-import java.util.Random;
 
 /**
  * This version of the demo of FireEffect uses the PixelBuffer in JavaFX 13.
  * Demo of fire effects with a writable image backed by a shared PixelBuffer.
- * A 600 x 600 canvas, worker thread with a 17ms sleep and animation timer at 16ms delay.
+ * A 600 x 600 canvas, worker thread paced to 60 frames per second and animation timer at 16ms delay.
  * The file FireEffect has been updated to help compare apples to apples.
  * You will want to pay attention to the Render UI times spent.
  * @author phillsm1
@@ -38,7 +37,6 @@ public class FireEffectPixelBuffer extends Application {
 
     SimpleBooleanProperty classic = new SimpleBooleanProperty(true);
     Canvas canvas;
-    int[] paletteAsInts; //this will contain the color palette
     int shift1, shift2, shift3;
     SimpleLongProperty workerTimes = new SimpleLongProperty(0);
     long workTimesMillis = 0;
@@ -98,9 +96,6 @@ public class FireEffectPixelBuffer extends Application {
         int screenWidth = 600;
         int screenHeight = 600;
 
-        // Y-coordinate first because we use horizontal scanlines
-        int[] fire = new int[screenHeight * screenWidth];  //this buffer will contain the fire
-
         // new way to store image Shared pixel buffer.
         IntBuffer intBuffer = ByteBuffer.allocateDirect(4 * screenWidth * screenHeight).asIntBuffer();
         PixelFormat<IntBuffer> pixelFormat = PixelFormat.getIntArgbPreInstance();
@@ -111,24 +106,34 @@ public class FireEffectPixelBuffer extends Application {
         GraphicsContext gc = canvas.getGraphicsContext2D();
 
         gc.drawImage(writableImage, 0, 0);
-        paletteAsInts = generateArgbPalette(256);
+
+        // The model colorizes each finished row straight into the pixel buffer's memory.
+        FireModel fireModel = new FireModel(screenWidth, screenHeight);
+        fireModel.setPixelTarget(intBuffer);
+        fireModel.pixelFormat = FireImageWriter.toFirePixelFormat(pixelBuffer.getPixelFormat());
+
+        // simulation rate, -Dfireeffect.fps overrides it
+        FramePacer pacer = new FramePacer(FramePacer.rateFromProperties(60));
 
         Task fireTask = new Task() {
             @Override
             protected Void call() throws Exception {
-                Random rand = new Random();
                 long startTime = 0;
                 long elapseTime = 0;
-                int fireStartHeight = (screenHeight - 1) * screenWidth;
                 //start the loop (one frame per loop)
                 while(!this.isCancelled() && !this.isDone()) {
                     // Start stop watch
                     startTime = System.currentTimeMillis();
 
                     //randomize the bottom row of the fire array.
-                    for(int i=fireStartHeight; i<fireStartHeight+screenWidth; i++) {
-                        fire[i] = Math.abs(32768 + rand.nextInt(65536)) % 256;
-                    }
+                    fireModel.genRandomFireRowWidth();
+                    fireModel.copyFireRowBottom();
+
+                    fireModel.classic = classic.get();
+                    fireModel.shift1 = shift1;
+                    fireModel.shift2 = shift2;
+                    fireModel.shift3 = shift3;
+
                     // each convolution matrix. X is the cell to update. Each 1 is the field to calculate.
                     // If a 1 cell is outside the boundaries use the the x or y's wrapped cell.
                     // (y, x)
@@ -140,27 +145,11 @@ public class FireEffectPixelBuffer extends Application {
                     // 3 | 0 1 0
                     // 4 | 0 1 0
                     //
-                    int a, b, row, index, pixel;
-                    for (int y = 0; y < screenHeight - 1; y++) {
-                        for (int x = 0; x < screenWidth; x++) {
-                            a = (y + 1) % screenHeight * screenWidth;
-                            b = x % screenWidth;
-                            row = y * screenWidth;
-                            index = row + x;
-                            pixel = fire[index]
-                                    = ((fire[a + ((x - 1 + screenWidth) % screenWidth)]
-                                    + fire[((y + 2) % screenHeight) * screenWidth + b]
-                                    + fire[a + ((x + 1) % screenWidth)]
-                                    + fire[((y + 3) % screenHeight * screenWidth) + b])
-                                    * 128) / 513;
-
-                            intBuffer.put(index, getPaletteValue(pixel));
-
-                        }
-                    }
+                    fireModel.convolution();
+
                     elapseTime = System.currentTimeMillis() - startTime;
                     workTimesMillis = elapseTime;
-                    Thread.sleep(17);
+                    pacer.awaitNextFrame();
                 }
                 return null;
             }
@@ -180,9 +169,17 @@ public class FireEffectPixelBuffer extends Application {
                 if(now > lastTimerCall + ANIMATION_DELAY) {
                     startTime = System.nanoTime();
 
-                    // A rect region to be updated in the writable image
-                    pixelBuffer.updateBuffer((b) -> new Rectangle2D(0, 0, screenWidth, screenHeight));
+                    // Only the rows the model changed since the last upload, the cold top stays black
+                    FireEvents.Span update = FireEvents.begin(FireEvents.Stage.BUFFER_UPDATE);
+                    int dirtyTop = fireModel.takeDirtyTop();
+                    pixelBuffer.updateBuffer((b) -> dirtyTop >= screenHeight - 1 ? Rectangle2D.EMPTY
+                            : new Rectangle2D(0, dirtyTop, screenWidth, screenHeight - 1 - dirtyTop));
+                    update.finish(fireModel.frameCount, screenWidth, screenHeight, fireModel.pixelFormat,
+                            (long) Math.max(0, screenHeight - 1 - dirtyTop) * screenWidth * 4);
+
+                    FireEvents.Span present = FireEvents.begin(FireEvents.Stage.PRESENT);
                     gc.drawImage(writableImage, 0, 0);
+                    present.finish(fireModel.frameCount, screenWidth, screenHeight, "drawImage", screenWidth * screenHeight * 4L);
 
                     gc.setFill(Color.WHITE);
                     gc.fillText("Worker time spent: " + workTimesMillis + "ms", 10, 15);
@@ -190,54 +187,13 @@ public class FireEffectPixelBuffer extends Application {
                     lastTimerCall = now;    //update for the next animation
                     elapseTime = (System.nanoTime() - startTime)/1e6;
                     gc.fillText("UI Render thread takes : " + elapseTime + "ms", 10, 30);
+                    gc.fillText(String.format("Simulation rate: %.1f fps (%d skipped)",
+                            pacer.getAchievedRate(), pacer.getSkippedFrames()), 10, 45);
                 }
             }
         };
         at.start();
     }
-    private int getPaletteValue(int pixelIndex) {
-        int value = 0;
-        try {
-            if (classic.get())
-                return paletteAsInts[pixelIndex];
-
-            if (shift1 > -1)
-                value |= paletteAsInts[pixelIndex] << shift1;
-            if (shift2 > -1)
-                value |= paletteAsInts[pixelIndex] << shift2;
-            if (shift3 > -1)
-                value |= paletteAsInts[pixelIndex] << shift3;
-        } catch (Exception e) {
-            System.out.println("pixelIndex: " + pixelIndex + "  value " + value + " " + e );
-        }
-
-        return value;
-    }
-    
-    private int[] generateArgbPalette(int max ) {
-        int [] pal = new int[max];
-        //generate the palette
-        for (int x = 0; x < max; x++) {
-            //HSLtoRGB is used to generate colors:
-            //Hue goes from 0 to 85: red to yellow
-            //Saturation is always the maximum: 255
-            //Lightness is 0..255 for x=0..128, and 255 for x=128..255
-            //color = HSLtoRGB(ColorHSL(x / 3, 255, std::min(255, x * 2)));
-            //set the palette to the calculated RGB value
-            //palette[x] = RGBtoINT();
-            double brightness = Math.min(255, x*2) / 255.0;
-            Color color = Color.hsb(x / 3.0, 1.0, brightness , 1);
-            pal[x] = rgbToIntArgb(color);            
-        }
-        return pal;
-    }
-
-    private static int rgbToIntArgb(Color colorRGB) {
-      return (int)(colorRGB.getOpacity()*255) << 24 |
-             (int)(colorRGB.getRed()    *255) << 16 | 
-             (int)(colorRGB.getGreen()  *255) <<  8 | 
-             (int)(colorRGB.getBlue()   *255);
-    }    
 
 //    static Color INTtoRGB(int colorINT) {
 //      return new Color(
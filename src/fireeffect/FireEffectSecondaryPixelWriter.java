@@ -12,8 +12,6 @@ import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 
 import java.nio.IntBuffer;
-import java.util.Arrays;
-import java.util.Random;
 
 /**
  *
@@ -46,57 +44,37 @@ public class FireEffectSecondaryPixelWriter extends Application {
         int screenWidth = 600;
         int screenHeight = 600;
 
-        // Y-coordinate first because we use horizontal scanlines
-        int[] fire = new int[screenHeight * screenWidth];  //this buffer will contain the fire
-        int[] fireBuf = new int[screenHeight * screenWidth];
+        // JavaFX free simulation, classic palette only
+        FireModel fireModel = new FireModel(screenWidth, screenHeight);
 
-        int[] bottomRow = new int[screenWidth];
-        int[] paletteAsInts; //this will contain the color palette
         WritableImage writableImage = new WritableImage(screenWidth, screenHeight);
         PixelWriter pwBuffer = writableImage.getPixelWriter();
         PixelReader prBuffer = writableImage.getPixelReader();
-        WritablePixelFormat<IntBuffer> pixelFormat = WritablePixelFormat.getIntArgbInstance();
+        // frames are colorized in the image's native (premultiplied) layout
+        WritablePixelFormat<IntBuffer> pixelFormat = FireImageWriter.negotiate(fireModel, pwBuffer);
 
         GraphicsContext gc = canvas.getGraphicsContext2D();
         PixelWriter pw = gc.getPixelWriter();
 
-        paletteAsInts = generateArgbPalette(256);
+        // simulation rate, -Dfireeffect.fps overrides it
+        FramePacer pacer = new FramePacer(FramePacer.rateFromProperties(30));
 
         Task fireTask = new Task() {
             @Override
             protected Void call() throws Exception {
-                Random rand = new Random();
-                //random latch
-                boolean latch = true;
                 long startTime = 0;
                 long elapseTime = 0;
-                int fireStartHeight = (screenHeight - 1) * screenWidth;
                 //start the loop (one frame per loop)
                 while(!this.isCancelled() && !this.isDone()) {
                     // Start stop watch
                     startTime = System.currentTimeMillis();
 
                     //randomize the bottom row of the fire buffer
-                    Arrays.parallelSetAll(bottomRow, value -> Math.abs(32768 + rand.nextInt(65536)) % 256);
-                    System.arraycopy(bottomRow, 0, fire, fireStartHeight, screenWidth);
-
-                    int a, b, row;
-                    for (int y = 0; y < screenHeight - 1; y++) {
-                        for (int x = 0; x < screenWidth; x++) {
-                            a = (y + 1) % screenHeight * screenWidth;
-                            b = x % screenWidth;
-                            row = y * screenWidth;
-                            int index = row + x;
-                            int pixel = fire[index]
-                                    = ((fire[a + ((x - 1 + screenWidth) % screenWidth)]
-                                    + fire[((y + 2) % screenHeight) * screenWidth + b]
-                                    + fire[a + ((x + 1) % screenWidth)]
-                                    + fire[((y + 3) % screenHeight * screenWidth) + b])
-                                    * 128) / 513;
-                            // pre populate the buffer
-                            fireBuf[index] = paletteAsInts[pixel];
-                        }
-                    }
+                    fireModel.genRandomFireRowWidth();
+                    fireModel.copyFireRowBottom();
+
+                    // pre populate the buffer
+                    fireModel.convolution();
 /////////////////////////////////////////////////////////////////////////////
 // A) Not sure why below is slower than above.
 //                    int heightMinusOne = (screenHeight-1) * screenWidth;
@@ -129,13 +107,16 @@ public class FireEffectSecondaryPixelWriter extends Application {
 
 
 //              synchronized (lock) {
-                    pwBuffer.setPixels(0, 0, screenWidth, screenHeight, pixelFormat, fireBuf, 0, screenWidth);
+                    FireEvents.Span upload = FireEvents.begin(FireEvents.Stage.UPLOAD);
+                    pwBuffer.setPixels(0, 0, screenWidth, screenHeight, pixelFormat, fireModel.fireBuf, 0, screenWidth);
+                    upload.finish(fireModel.frameCount, screenWidth, screenHeight, pixelFormat.getType(), screenWidth * screenHeight * 4L);
 //              }
 
                     elapseTime = System.currentTimeMillis() - startTime;
-                    System.out.println("Worker thread takes : " + elapseTime + "ms");
+                    System.out.println("Worker thread takes : " + elapseTime + "ms, "
+                            + String.format("%.1f fps", pacer.getAchievedRate()));
                     //System.out.println(counter++);
-                    Thread.sleep(33);
+                    pacer.awaitNextFrame();
                 }
                 return null;
             }
@@ -155,7 +136,9 @@ public class FireEffectSecondaryPixelWriter extends Application {
                 if(now > lastTimerCall + ANIMATION_DELAY) {
 
                     startTime = System.nanoTime();
+                    FireEvents.Span present = FireEvents.begin(FireEvents.Stage.PRESENT);
                     pw.setPixels(0, 0, screenWidth, screenHeight, prBuffer, 0, 0);
+                    present.finish(fireModel.frameCount, screenWidth, screenHeight, "PixelReader", screenWidth * screenHeight * 4L);
                     lastTimerCall = now;    //update for the next animation
                     elapseTime = (System.nanoTime() - startTime)/1e6;
                     System.out.println("UI Render thread takes : " + elapseTime + "ms");
@@ -164,43 +147,4 @@ public class FireEffectSecondaryPixelWriter extends Application {
         };
         at.start();
     }
-
-    private int[] generateArgbPalette(int max ) {
-        int [] pal = new int[max];
-        //generate the palette
-        for (int x = 0; x < max; x++) {
-            //HSLtoRGB is used to generate colors:
-            //Hue goes from 0 to 85: red to yellow
-            //Saturation is always the maximum: 255
-            //Lightness is 0..255 for x=0..128, and 255 for x=128..255
-            //color = HSLtoRGB(ColorHSL(x / 3, 255, std::min(255, x * 2)));
-            //set the palette to the calculated RGB value
-            //palette[x] = RGBtoINT();
-            //double brightness = Math.min(255, x*2) / 255.0;
-            //pal[x] = Color.hsb(x / 3.0, 1.0, brightness , 1);
-            // 65536 * r + 256 * g + b;
-            //pal[x] = rgbToInt(Color.rgb(x, x, x));
-            double brightness = Math.min(255, x*2) / 255.0;
-            Color color = Color.hsb(x / 3.0, 1.0, brightness , 1);
-
-//            pal[x] = rgbToInt(color); // alpha is set to zero.
-            pal[x] = rgbToInt(color) ^ 0xFF000000; // xor to make opacity 1.
-//            pal[x] = (color.hashCode() >>> 8) ^ 0xFF000000;
-        }
-        //if (true) throw new NullPointerException();
-        return pal;
-    }
-
-    // @todo Alpha is ignored  (JavaFX Color.hashcode integer isn't the same) rgba vs argb
-    private static int rgbToInt(Color colorRGB) {
-      return 65536 * (int)(colorRGB.getRed()*255) + 256 * (int)(colorRGB.getGreen()*255) + (int)(colorRGB.getBlue()*255);
-    }
-
-    static Color INTtoRGB(int colorINT) {
-      return new Color(
-        (colorINT / 65536) % 256, 
-        (colorINT / 256) % 256,
-        colorINT % 256,
-        1.0);
-    }    
 }
@@ -0,0 +1,94 @@
+package fireeffect;
+
+/**
+ * Flight Recorder events for the stages of a frame, so a recording shows whether a slow frame
+ * came from seeding, convolution, the upload into an image or buffer, or the present on the
+ * FX thread. Record with e.g. {@code -XX:StartFlightRecording=filename=fire.jfr} and look for
+ * the "FireEffect" category in JMC or {@code jfr print --categories FireEffect fire.jfr}.
+ *
+ * Every stage is wrapped like this:
+ * <pre>
+ * FireEvents.Span event = FireEvents.begin(FireEvents.Stage.CONVOLUTION);
+ * ...
+ * event.finish(frame, width, height, mode, bytes);
+ * </pre>
+ * The events themselves live in src-jfr (fireeffect.JfrRecorder), because jdk.jfr needs
+ * JDK 11+ and the core builds and runs on any JDK including 8. The recorder is loaded on
+ * first use; without it, or while no recording runs, begin returns a span that does nothing.
+ * @author cpdea
+ */
+public final class FireEvents {
+    private FireEvents() {
+    }
+
+    public enum Stage {
+        /** Noise written into the bottom row */
+        SEED,
+        /** One frame of the fire stencil, colorized */
+        CONVOLUTION,
+        /** Colorized frame copied into a WritableImage with setPixels */
+        UPLOAD,
+        /** PixelBuffer.updateBuffer of the rows that changed */
+        BUFFER_UPDATE,
+        /** Frame drawn on the FX thread by the AnimationTimer */
+        PRESENT
+    }
+
+    /**
+     * One stage in progress.
+     */
+    public interface Span {
+        /**
+         * End the stage and record it when a recording wants it.
+         * @param frame frames convolved by the model before this stage
+         * @param mode engine, noise source or pixel format the stage ran with, see {@link #modeName}
+         * @param bytes bytes written by the stage
+         */
+        void finish(long frame, int width, int height, Object mode, long bytes);
+    }
+
+    /**
+     * Starts spans, implemented by the optional Flight Recorder events.
+     */
+    interface Recorder {
+        Span begin(Stage stage);
+    }
+
+    static final Span NONE = (frame, width, height, mode, bytes) -> {
+    };
+
+    private static final Recorder RECORDER = loadRecorder();
+
+    static Recorder loadRecorder() {
+        try {
+            return (Recorder) Class.forName("fireeffect.JfrRecorder").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // built without src-jfr or running on a JDK without jdk.jfr
+            return stage -> NONE;
+        }
+    }
+
+    /**
+     * @return the span of the stage, finish it when the stage is done
+     */
+    public static Span begin(Stage stage) {
+        return RECORDER.begin(stage);
+    }
+
+    /**
+     * Recorded name of a mode: strings are used as is, enums by name, anything else by its class name.
+     */
+    static String modeName(Object mode) {
+        if (mode == null || mode instanceof String) {
+            return (String) mode;
+        } else if (mode instanceof Enum) {
+            return ((Enum<?>) mode).name();
+        } else if (mode == ConvolutionEngine.SEQUENTIAL) {
+            // the built in engines are lambdas without a readable class name
+            return "SequentialConvolution";
+        } else if (mode == ConvolutionEngine.REFERENCE) {
+            return "ReferenceConvolution";
+        }
+        return mode.getClass().getSimpleName();
+    }
+}
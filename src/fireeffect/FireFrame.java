@@ -0,0 +1,33 @@
+package fireeffect;
+
+import java.util.Arrays;
+
+/**
+ * One colorized frame: width * height ARGB pixels, row major.
+ * The pixel array is reused and only grows (with some headroom), so resizing to a smaller window keeps it.
+ * @author cpdea
+ */
+public class FireFrame {
+    public int width;
+    public int height;
+    public int[] pixels = new int[0];
+    public long frameNumber;
+    public long seedTime;       // System.nanoTime() when the frame's seed row was filled
+
+    /**
+     * Make room for a width * height frame, reusing the current pixels when they are big enough.
+     */
+    public void ensureSize(int width, int height) {
+        if (this.width == width && this.height == height) {
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        if (pixels.length < width * height) {
+            pixels = new int[FireModel.grownCapacity(width * height, pixels.length)];
+        } else {
+            // the seed row is never colorized, do not leave pixels of the old layout in it
+            Arrays.fill(pixels, 0, width * height, 0);
+        }
+    }
+}
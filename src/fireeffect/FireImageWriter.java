@@ -0,0 +1,92 @@
+package fireeffect;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.image.WritablePixelFormat;
+
+import java.nio.IntBuffer;
+
+/**
+ * JavaFX side of a {@link FireModel}: copies the colorized frame into a WritableImage.
+ *
+ * The model's pixel format is negotiated with the image, so the frame is already in the
+ * image's native layout (premultiplied for Prism's ByteBgraPre images) and setPixels does not
+ * have to convert every pixel.
+ * @author cpdea
+ */
+public class FireImageWriter {
+    private final FireModel fireModel;
+    private WritableImage writableImage;
+    private final WritablePixelFormat<IntBuffer> pixelFormat;
+
+    public FireImageWriter(FireModel fireModel) {
+        this.fireModel = fireModel;
+        this.writableImage = new WritableImage(fireModel.screenWidth, fireModel.screenHeight);
+        this.pixelFormat = negotiate(fireModel, writableImage.getPixelWriter());
+    }
+
+    /**
+     * Set the model's pixel format to the int layout closest to what {@code writer} stores
+     * natively, i.e. premultiplied when the surface is premultiplied.
+     * @return the format to hand to setPixels together with the model's int[] frames
+     */
+    public static WritablePixelFormat<IntBuffer> negotiate(FireModel fireModel, PixelWriter writer) {
+        if (writer.getPixelFormat().isPremultiplied()) {
+            fireModel.pixelFormat = FirePixelFormat.INT_ARGB_PRE;
+            return WritablePixelFormat.getIntArgbPreInstance();
+        }
+        fireModel.pixelFormat = FirePixelFormat.INT_ARGB;
+        return WritablePixelFormat.getIntArgbInstance();
+    }
+
+    /**
+     * The model's layout for writing straight into a PixelBuffer of the given format.
+     * @throws IllegalArgumentException for layouts the model can not colorize into
+     */
+    public static FirePixelFormat toFirePixelFormat(PixelFormat<?> pixelFormat) {
+        switch (pixelFormat.getType()) {
+            case INT_ARGB:
+                return FirePixelFormat.INT_ARGB;
+            case INT_ARGB_PRE:
+                return FirePixelFormat.INT_ARGB_PRE;
+            case BYTE_BGRA_PRE:
+                return FirePixelFormat.BYTE_BGRA_PRE;
+            default:
+                throw new IllegalArgumentException("Unsupported pixel format " + pixelFormat.getType());
+        }
+    }
+
+    /**
+     * Copy the frame with the negotiated format.
+     */
+    public WritableImage copyWritable() {
+        return copyWritable(pixelFormat);
+    }
+
+    /**
+     * Copy the frame, {@code pixelFormat} must describe the model's {@link FireModel#pixelFormat}.
+     */
+    public WritableImage copyWritable(WritablePixelFormat<IntBuffer> pixelFormat) {
+        PixelWriter pwBuffer = writableImage.getPixelWriter();
+        FireEvents.Span event = FireEvents.begin(FireEvents.Stage.UPLOAD);
+        try {
+            pwBuffer.setPixels(0, 0, fireModel.screenWidth, fireModel.screenHeight, pixelFormat,
+                    fireModel.fireBuf, 0, fireModel.screenWidth);
+        } catch (Throwable th) {
+            th.printStackTrace();
+        }
+        event.finish(fireModel.frameCount, fireModel.screenWidth, fireModel.screenHeight,
+                pixelFormat.getType(), (long) fireModel.screenWidth * fireModel.screenHeight * 4);
+        return writableImage;
+    }
+
+    public WritableImage getWritableImage() {
+        return writableImage;
+    }
+
+    public void cleanup() {
+        writableImage.cancel();
+        writableImage = null;
+    }
+}
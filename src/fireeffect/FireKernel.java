@@ -0,0 +1,68 @@
+package fireeffect;
+
+/**
+ * Modulo free version of the fire convolution shared by every demo and engine.
+ *
+ * The wrap-around columns are peeled out of the row loop and only the bottom rows, whose
+ * taps wrap to the top of the field, pay for a modulo (once per row, not per pixel).
+ * The divide {@code (sum * 128) / 513} is replaced by a multiply and shift that gives the
+ * same result for every possible sum of four 8 bit taps (0..1020).
+ * @author cpdea
+ */
+public final class FireKernel {
+    /** (sum * DECAY_MULTIPLIER) >>> DECAY_SHIFT == (sum * 128) / 513 for 0 <= sum <= 1020. */
+    static final int DECAY_MULTIPLIER = 65409;
+    static final int DECAY_SHIFT = 18;
+    /** Row y reads rows y+1..y+3. */
+    static final int TAP_ROWS = 3;
+
+    private FireKernel() {
+    }
+
+    static int decay(int sum) {
+        return (sum * DECAY_MULTIPLIER) >>> DECAY_SHIFT;
+    }
+
+    /**
+     * Convolve row y of a width * height fire field in place.
+     * @param fire heat values as unsigned bytes, row major
+     * @param width columns in the field
+     * @param height rows in the field
+     * @param y row to update, its taps are the rows y+1..y+3 wrapping to the top
+     */
+    public static void convolveRow(byte[] fire, int width, int height, int y) {
+        int r1 = y + 1, r2 = y + 2, r3 = y + 3;
+        if (r3 >= height) {
+            // bottom rows read from the top of the field
+            r1 %= height;
+            r2 %= height;
+            r3 %= height;
+        }
+        convolveRow(fire, y * width, fire, r1 * width, fire, r2 * width, fire, r3 * width, width);
+    }
+
+    /**
+     * Convolve one row given its three source rows. The sources may be rows of the
+     * destination array or copies of them (see {@link BandedConvolution}).
+     * Taps: (x-1, y+1), (x, y+2), (x+1, y+1), (x, y+3) with x wrapping around the row.
+     */
+    static void convolveRow(byte[] dst, int dstOffset,
+                            byte[] row1, int offset1,
+                            byte[] row2, int offset2,
+                            byte[] row3, int offset3,
+                            int width) {
+        int last = width - 1;
+        // left edge wraps to the last column
+        dst[dstOffset] = (byte) decay((row1[offset1 + last] & 0xFF) + (row2[offset2] & 0xFF)
+                + (row1[offset1 + (last > 0 ? 1 : 0)] & 0xFF) + (row3[offset3] & 0xFF));
+        for (int x = 1; x < last; x++) {
+            dst[dstOffset + x] = (byte) decay((row1[offset1 + x - 1] & 0xFF) + (row2[offset2 + x] & 0xFF)
+                    + (row1[offset1 + x + 1] & 0xFF) + (row3[offset3 + x] & 0xFF));
+        }
+        if (last > 0) {
+            // right edge wraps to the first column
+            dst[dstOffset + last] = (byte) decay((row1[offset1 + last - 1] & 0xFF) + (row2[offset2 + last] & 0xFF)
+                    + (row1[offset1] & 0xFF) + (row3[offset3 + last] & 0xFF));
+        }
+    }
+}
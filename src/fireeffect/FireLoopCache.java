@@ -0,0 +1,378 @@
+package fireeffect;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A seamless loop of heat fields simulated once and replayed from a memory-mapped file.
+ *
+ * The loop is cut from fadeFrames+frames simulated frames. The last fadeFrames frames of the
+ * loop are cross-faded (in heat) with the first fadeFrames simulated frames, which lead into
+ * the first frame of the loop, so the last frame runs smoothly into the first one. Those lead-in
+ * frames are spilled to a temporary file while simulating, so the fade window costs no memory.
+ *
+ * The loop is stored as a {@link HeatCodec} stream of heat fields, a fraction of the size of
+ * ARGB frames, and colorized on playback with the model's palette, shift settings and pixel
+ * format. One file therefore serves every palette; it is named after the resolution and loop
+ * length and {@link #open} reuses a matching file and only simulates when none exists yet.
+ * Least recently used loops are deleted once the directory holds more than
+ * {@value #CACHE_SIZE_PROPERTY} megabytes.
+ * @author cpdea
+ */
+public class FireLoopCache implements Closeable {
+    public static final String LOOP_PROPERTY = "fireeffect.loop";          // loop length in frames
+    public static final String CACHE_DIR_PROPERTY = "fireeffect.cacheDir";
+    public static final String CACHE_SIZE_PROPERTY = "fireeffect.cacheSize"; // megabytes of loops kept
+    public static final int DEFAULT_WARMUP = 120;
+    public static final long DEFAULT_CACHE_SIZE = 1024;
+
+    static final long MAGIC = 0x464952454C4F4F50L;   // "FIRELOOP"
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 64;               // the heat stream follows the header
+    static final String SUFFIX = ".loop";
+    // temporary files older than this were left behind by a run that did not finish
+    static final long STALE_TEMP_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    public final int width, height, frames;
+    private final Key key;
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedInput input;
+    private final HeatCodec.Decoder decoder;
+
+    private FireLoopCache(Key key, Path file, FileChannel channel) throws IOException {
+        this.key = key;
+        this.file = file;
+        this.channel = channel;
+        this.width = key.width;
+        this.height = key.height;
+        this.frames = key.frames;
+        if (channel.size() > Integer.MAX_VALUE) {
+            throw new IOException("Fire loop " + file + " is too large to map");
+        }
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        mapped.position(HEADER_BYTES);
+        input = new MappedInput(mapped, HEADER_BYTES + HeatCodec.HEADER_BYTES);
+        decoder = new HeatCodec.Decoder(input);
+        if (decoder.width != width || decoder.height != height) {
+            throw new IOException("Fire loop " + file + " holds " + decoder.width + "x" + decoder.height + " frames");
+        }
+    }
+
+    /**
+     * @return the directory named by {@value #CACHE_DIR_PROPERTY}, or fireeffect in the temp directory
+     */
+    public static Path defaultDirectory() {
+        String dir = System.getProperty(CACHE_DIR_PROPERTY);
+        return dir != null ? Paths.get(dir) : Paths.get(System.getProperty("java.io.tmpdir"), "fireeffect");
+    }
+
+    /**
+     * @return the {@value #CACHE_SIZE_PROPERTY} limit in bytes, or the default
+     */
+    public static long cacheSizeFromProperties() {
+        return Long.getLong(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE) * 1024 * 1024;
+    }
+
+    /**
+     * Open the loop matching the model's size, simulating it with {@code model} first when the
+     * directory has no such loop yet. Simulating advances the model.
+     * @param frames length of the loop
+     * @param fadeFrames frames cross-faded at the seam, less than frames
+     */
+    public static FireLoopCache open(Path directory, FireModel model, int frames, int fadeFrames) throws IOException {
+        if (fadeFrames < 0 || fadeFrames >= frames) {
+            throw new IllegalArgumentException("Need 0 <= fadeFrames < frames, got " + fadeFrames + " of " + frames);
+        }
+        Key key = new Key(model.screenWidth, model.screenHeight, frames, fadeFrames);
+        Files.createDirectories(directory);
+        Path file = directory.resolve(key.fileName());
+        if (Files.isRegularFile(file)) {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            if (key.matchesHeader(channel)) {
+                // reused loops count as recently used
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+                evict(directory, file, cacheSizeFromProperties());
+                return new FireLoopCache(key, file, channel);
+            }
+            channel.close();
+        }
+
+        // write to a temporary file first, so other instances never map a half written loop
+        Path tmp = Files.createTempFile(directory, key.fileName(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                simulate(model, key, channel, directory);
+                channel.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        evict(directory, file, cacheSizeFromProperties());
+        return new FireLoopCache(key, file, FileChannel.open(file, StandardOpenOption.READ));
+    }
+
+    private static void simulate(FireModel model, Key key, FileChannel channel, Path directory) throws IOException {
+        int cells = key.width * key.height;
+        int fade = key.fadeFrames;
+        byte[] heat = new byte[cells];
+        byte[] blend = new byte[cells];
+
+        channel.write(key.header(), 0);
+        channel.position(HEADER_BYTES);
+        // not closed here, closing the stream would close the channel before it is forced
+        HeatCodec.Encoder loop = new HeatCodec.Encoder(Channels.newOutputStream(channel), key.width, key.height, 0);
+
+        // the frames are only needed as heat, colorize them into the model's own frame and not a caller's buffer
+        IntBuffer previousTarget = model.pixelTarget;
+        model.setPixelTarget(null);
+        model.detachFrameBuffer();
+        Path leadIn = fade > 0 ? Files.createTempFile(directory, key.fileName(), ".tmp") : null;
+        HeatCodec.Decoder fadeInto = null;
+        try {
+            for (int i = 0; i < DEFAULT_WARMUP; i++) {
+                step(model);
+            }
+            if (fade > 0) {
+                try (HeatCodec.Encoder spill = new HeatCodec.Encoder(Files.newOutputStream(leadIn), key.width, key.height, 0)) {
+                    for (int i = 0; i < fade; i++) {
+                        step(model);
+                        spill.writeFrame(model);
+                    }
+                }
+                fadeInto = new HeatCodec.Decoder(Files.newInputStream(leadIn));
+            }
+            for (int i = 0; i < key.frames - fade; i++) {
+                step(model);
+                loop.writeFrame(model);
+            }
+            // blend the frames past the end of the loop into the lead-in of its first frame
+            for (int slot = 0; slot < fade; slot++) {
+                step(model);
+                model.copyHeat(heat);
+                byte[] start = fadeInto.readFrame();
+                int weight = slot + 1;
+                for (int index = 0; index < cells; index++) {
+                    blend[index] = (byte) (((heat[index] & 0xFF) * (fade + 1 - weight)
+                            + (start[index] & 0xFF) * weight) / (fade + 1));
+                }
+                loop.writeFrame(blend);
+            }
+            loop.flush();
+        } finally {
+            if (fadeInto != null) {
+                fadeInto.close();
+            }
+            if (leadIn != null) {
+                Files.deleteIfExists(leadIn);
+            }
+            model.setPixelTarget(previousTarget);
+        }
+    }
+
+    private static void step(FireModel model) {
+        model.genRandomFireRowWidth();
+        model.copyFireRowBottom();
+        model.convolution();
+    }
+
+    /**
+     * Delete temporary files left behind by runs that did not finish and the least recently
+     * used loops until the loops of {@code directory} take at most {@code maxBytes}.
+     * {@code keep} is never deleted. Files that vanish or can not be deleted (e.g. still
+     * mapped by another process) are skipped.
+     */
+    static void evict(Path directory, Path keep, long maxBytes) throws IOException {
+        List<Path> loops = new ArrayList<>();
+        long staleBefore = System.currentTimeMillis() - STALE_TEMP_MILLIS;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "fire-*")) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                try {
+                    if (name.endsWith(SUFFIX)) {
+                        loops.add(entry);
+                    } else if (name.endsWith(".tmp") && Files.getLastModifiedTime(entry).toMillis() < staleBefore) {
+                        Files.deleteIfExists(entry);
+                    }
+                } catch (IOException e) {
+                    // another instance removed or still uses it
+                }
+            }
+        }
+        long[] modified = new long[loops.size()];
+        long[] sizes = new long[loops.size()];
+        Integer[] order = new Integer[loops.size()];
+        for (int i = 0; i < loops.size(); i++) {
+            order[i] = i;
+            try {
+                modified[i] = Files.getLastModifiedTime(loops.get(i)).toMillis();
+                sizes[i] = Files.size(loops.get(i));
+            } catch (IOException e) {
+                modified[i] = Long.MIN_VALUE;
+            }
+        }
+        // newest first, the loops past the budget go
+        Arrays.sort(order, Comparator.comparingLong((Integer i) -> modified[i]).reversed());
+        long total = 0;
+        for (int i : order) {
+            Path loop = loops.get(i);
+            total += sizes[i];
+            if (total > maxBytes && !loop.equals(keep)) {
+                try {
+                    Files.deleteIfExists(loop);
+                } catch (IOException e) {
+                    // still mapped elsewhere, try again next time
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true when this loop was made for the model's current size
+     */
+    public boolean matches(FireModel model) {
+        return model.screenWidth == width && model.screenHeight == height;
+    }
+
+    /**
+     * Colorize the next frame of the loop into the model's current target, with the model's
+     * palette, shift settings and pixel format. The loop starts over after its last frame.
+     * The model does not advance, its heat field is replaced by the frame.
+     */
+    public void nextFrame(FireModel model) throws IOException {
+        if (!matches(model)) {
+            throw new IllegalArgumentException("Model is " + model.screenWidth + "x" + model.screenHeight
+                    + ", the loop " + width + "x" + height);
+        }
+        byte[] heat = decoder.readFrame();
+        if (heat == null) {
+            // back to the first frame, a keyframe, so the decoder needs no reset
+            input.rewind();
+            heat = decoder.readFrame();
+        }
+        model.loadHeat(heat);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        decoder.close();
+        channel.close();
+    }
+
+    /**
+     * Reads the mapped heat stream and rewinds to its first frame.
+     */
+    private static final class MappedInput extends InputStream {
+        private final ByteBuffer buffer;
+        private final int firstFrame;
+
+        MappedInput(ByteBuffer buffer, int firstFrame) {
+            this.buffer = buffer;
+            this.firstFrame = firstFrame;
+        }
+
+        void rewind() {
+            buffer.position(firstFrame);
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            length = Math.min(length, buffer.remaining());
+            buffer.get(target, offset, length);
+            return length;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * Everything the stored heat depends on. Palette, shifts and pixel format only apply
+     * when colorizing, so they are not part of it.
+     */
+    static final class Key {
+        final int width, height, frames, fadeFrames;
+
+        Key(int width, int height, int frames, int fadeFrames) {
+            this.width = width;
+            this.height = height;
+            this.frames = frames;
+            this.fadeFrames = fadeFrames;
+        }
+
+        String fileName() {
+            return String.format("fire-%dx%d-%df%d%s", width, height, frames, fadeFrames, SUFFIX);
+        }
+
+        ByteBuffer header() {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putLong(MAGIC).putInt(VERSION)
+                    .putInt(width).putInt(height).putInt(frames).putInt(fadeFrames);
+            header.clear();
+            return header;
+        }
+
+        boolean matchesHeader(FileChannel channel) throws IOException {
+            if (channel.size() <= HEADER_BYTES + HeatCodec.HEADER_BYTES) {
+                return false;
+            }
+            ByteBuffer stored = ByteBuffer.allocate(HEADER_BYTES);
+            for (int read = 0; read >= 0 && stored.hasRemaining(); ) {
+                read = channel.read(stored, stored.position());
+            }
+            stored.flip();
+            return stored.equals(header());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return width == other.width && height == other.height && frames == other.frames
+                    && fadeFrames == other.fadeFrames;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new int[]{width, height, frames, fadeFrames});
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package fireeffect;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Frame timing metrics of one fire effect: latency histograms for the simulation, upload,
+ * present and frame age (seed to screen), counters for dropped and duplicated frames and the
+ * CPU time of the worker threads.
+ *
+ * Recording never blocks, so the worker and the FX thread record every frame. The numbers
+ * are read through JMX ({@link #register(String)}) or handed out periodically as a
+ * {@link Snapshot} ({@link #startReporting(long, Consumer)}). The
+ * {@value #PERIOD_PROPERTY} property sets the demos' report period in seconds, 0 turns it off.
+ * @author cpdea
+ */
+public class FireMetrics implements FireMetricsMXBean {
+    public static final String PERIOD_PROPERTY = "fireeffect.metricsPeriod";
+    public static final long DEFAULT_PERIOD_SECONDS = 5;
+
+    private final LatencyHistogram simulation = new LatencyHistogram();
+    private final LatencyHistogram upload = new LatencyHistogram();
+    private final LatencyHistogram present = new LatencyHistogram();
+    private final LatencyHistogram frameAge = new LatencyHistogram();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder duplicated = new LongAdder();
+    private volatile long[] workerIds = new long[0];
+    private volatile long cpuTimeBase;
+
+    private ObjectName objectName;
+    private ScheduledExecutorService reporter;
+
+    public void recordSimulation(long nanos) {
+        simulation.record(nanos);
+    }
+
+    public void recordUpload(long nanos) {
+        upload.record(nanos);
+    }
+
+    public void recordPresent(long nanos) {
+        present.record(nanos);
+    }
+
+    /**
+     * @param seedNanos System.nanoTime() when the presented frame's seed row was filled
+     */
+    public void recordFrameAge(long seedNanos) {
+        frameAge.record(System.nanoTime() - seedNanos);
+    }
+
+    public void frameDropped(long frames) {
+        dropped.add(frames);
+    }
+
+    public void frameDuplicated() {
+        duplicated.increment();
+    }
+
+    /**
+     * Count the CPU time of {@code worker} in {@link #getWorkerCpuTimeNanos()}.
+     */
+    public synchronized void registerWorker(Thread worker) {
+        long[] ids = Arrays.copyOf(workerIds, workerIds.length + 1);
+        ids[ids.length - 1] = worker.getId();
+        workerIds = ids;
+    }
+
+    @Override
+    public LatencyHistogram.Summary getSimulation() {
+        return simulation.summary();
+    }
+
+    @Override
+    public LatencyHistogram.Summary getUpload() {
+        return upload.summary();
+    }
+
+    @Override
+    public LatencyHistogram.Summary getPresent() {
+        return present.summary();
+    }
+
+    @Override
+    public LatencyHistogram.Summary getFrameAge() {
+        return frameAge.summary();
+    }
+
+    @Override
+    public long getDroppedFrames() {
+        return dropped.sum();
+    }
+
+    @Override
+    public long getDuplicatedFrames() {
+        return duplicated.sum();
+    }
+
+    @Override
+    public long getWorkerCpuTimeNanos() {
+        long cpu = workerCpuTime();
+        return cpu < 0 ? cpu : cpu - cpuTimeBase;
+    }
+
+    private long workerCpuTime() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadCpuTimeSupported() || !threads.isThreadCpuTimeEnabled()) {
+            return -1;
+        }
+        long sum = 0;
+        for (long id : workerIds) {
+            // threads that ended report -1 and no longer count
+            sum += Math.max(0, threads.getThreadCpuTime(id));
+        }
+        return sum;
+    }
+
+    /**
+     * Start every histogram and counter from zero.
+     */
+    @Override
+    public void reset() {
+        simulation.reset();
+        upload.reset();
+        present.reset();
+        frameAge.reset();
+        dropped.reset();
+        duplicated.reset();
+        cpuTimeBase = Math.max(0, workerCpuTime());
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(getSimulation(), getUpload(), getPresent(), getFrameAge(),
+                getDroppedFrames(), getDuplicatedFrames(), getWorkerCpuTimeNanos());
+    }
+
+    /**
+     * Register with the platform MBean server as {@code fireeffect:type=FireMetrics,name=<name>}.
+     */
+    public synchronized void register(String name) {
+        try {
+            objectName = new ObjectName("fireeffect:type=FireMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (JMException ex) {
+            throw new IllegalStateException("Could not register metrics " + name, ex);
+        }
+    }
+
+    /**
+     * Hand a snapshot to {@code listener} every {@code periodSeconds} on a daemon thread.
+     */
+    public synchronized void startReporting(long periodSeconds, Consumer<Snapshot> listener) {
+        stopReporting();
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fire-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> listener.accept(snapshot()), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return the {@value #PERIOD_PROPERTY} report period in seconds, or the default
+     */
+    public static long periodFromProperties() {
+        return Long.getLong(PERIOD_PROPERTY, DEFAULT_PERIOD_SECONDS);
+    }
+
+    public synchronized void stopReporting() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    /**
+     * Stop reporting and unregister from JMX.
+     */
+    public synchronized void close() {
+        stopReporting();
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException ex) {
+                ex.printStackTrace();
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * All metrics at one point in time.
+     */
+    public static final class Snapshot {
+        public final LatencyHistogram.Summary simulation, upload, present, frameAge;
+        public final long droppedFrames, duplicatedFrames;
+        public final long workerCpuTimeNanos;
+
+        Snapshot(LatencyHistogram.Summary simulation, LatencyHistogram.Summary upload,
+                 LatencyHistogram.Summary present, LatencyHistogram.Summary frameAge,
+                 long droppedFrames, long duplicatedFrames, long workerCpuTimeNanos) {
+            this.simulation = simulation;
+            this.upload = upload;
+            this.present = present;
+            this.frameAge = frameAge;
+            this.droppedFrames = droppedFrames;
+            this.duplicatedFrames = duplicatedFrames;
+            this.workerCpuTimeNanos = workerCpuTimeNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "simulation " + simulation + ", upload " + upload + ", present " + present
+                    + ", frame age " + frameAge + ", dropped " + droppedFrames
+                    + ", duplicated " + duplicatedFrames
+                    + String.format(", worker cpu %.1fs", workerCpuTimeNanos / 1e9);
+        }
+    }
+}
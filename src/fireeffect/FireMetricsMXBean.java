@@ -0,0 +1,32 @@
+package fireeffect;
+
+/**
+ * Management interface of {@link FireMetrics}, shown under {@code fireeffect:type=FireMetrics}
+ * in JConsole, JMC or any JMX scraper.
+ * @author cpdea
+ */
+public interface FireMetricsMXBean {
+
+    /** Seeding and convolution of one frame. */
+    LatencyHistogram.Summary getSimulation();
+
+    /** Copy of a finished frame into an image or buffer. */
+    LatencyHistogram.Summary getUpload();
+
+    /** Work on the FX thread to put a frame on screen. */
+    LatencyHistogram.Summary getPresent();
+
+    /** Time from seeding a frame until it was presented. */
+    LatencyHistogram.Summary getFrameAge();
+
+    /** Frames simulated but replaced before they were presented. */
+    long getDroppedFrames();
+
+    /** Presents that had no new frame and showed the previous one again. */
+    long getDuplicatedFrames();
+
+    /** CPU time of the registered worker threads, in nanoseconds, -1 when not supported. */
+    long getWorkerCpuTimeNanos();
+
+    void reset();
+}
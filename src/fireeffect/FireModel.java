@@ -1,27 +1,48 @@
 package fireeffect;
 
-import javafx.scene.image.PixelWriter;
-import javafx.scene.image.WritableImage;
-import javafx.scene.image.WritablePixelFormat;
-import javafx.scene.paint.Color;
-
+import java.nio.ByteOrder;
 import java.nio.IntBuffer;
 import java.util.Arrays;
-import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Heat field simulation, palette and frame output without any JavaFX dependency.
+ * Frames are colorized into fireBuf, a caller supplied int[] ({@link #setFrameBuffer})
+ * or an IntBuffer ({@link #setPixelTarget}), which may also be a view of a ByteBuffer.
+ * JavaFX applications show the frames through {@link FireImageWriter}.
+ *
+ * Heat loses about one step per row as it rises, so the top of a tall field stays cold.
+ * The model tracks the flame top (the first row holding any heat) and engines skip the rows
+ * that can not warm up this frame, because all three rows they read are cold. Those rows are
+ * only filled with the color of heat 0 when the output target does not hold it yet.
+ * @author phillsm1
+ * @author cpdea
+ */
 public class FireModel {
-    Random rand = new Random();
-
     public int screenWidth = 800, screenHeight = 600; // The canvas dimensions
 
-    public int[] fire;         //this buffer will contain the fire
-    public int[] fireBuf;      //double buffer
+    byte[] fire;               //heat field, one unsigned byte (0..255) per cell
+    public int[] fireBuf;      //double buffer, heat expanded to ARGB
+    private int[] ownFrameBuffer; //the model's own fireBuf while a caller's frame is set, else null
+    IntBuffer pixelTarget;     //when set, colorized rows go straight here instead of fireBuf
     public int[] bottomRow;    //seeds of flames randomly generated
     public int[] paletteAsInts; //this will contain a 32 bit (integer) array of colors for the palette
+    int[] lut;                  //compiled colors of the current frame, heat -> ARGB
+    private final PaletteCache palettes = new PaletteCache();
 
     public boolean classic = true;
+    public FirePixelFormat pixelFormat = FirePixelFormat.INT_ARGB; //layout of the colorized frames
     public int shift1, shift2, shift3;  //cheesy way to use bit shifting to make waves
-    WritableImage writableImage;
+    public ConvolutionEngine engine;    //strategy used to advance the fire one frame
+    public NoiseSource noise;           //random heat of the seed row, owned by the simulation thread
+    public long frameCount;             //number of convolution() calls so far
+    int firstActiveRow;                 //engines start here, the rows above stay cold this frame
+    int heatModCount;                   //bumped whenever the heat field is written outside an engine
+    private int flameTop;               //first row holding any heat, the seed row when all is cold
+    private final AtomicInteger dirtyTop = new AtomicInteger(); //first target row changed since takeDirtyTop()
+    private final ColdRows coldRows = new ColdRows(); //top rows of recent targets already cold
+    private final ThreadLocal<RowWriter> rowWriters = ThreadLocal.withInitial(RowWriter::new);
+    private byte[] resizeScratch = new byte[0];       //previous heat field while resampling
 
     public FireModel(){
         this(800, 600);
@@ -30,101 +51,375 @@ public class FireModel {
     public FireModel(int screenWidth, int screenHeight) {
         this.screenWidth = screenWidth;
         this.screenHeight = screenHeight;
-        this.paletteAsInts = generateArgbPalette(256);
-        writableImage = new WritableImage(screenWidth, screenHeight);
+        this.paletteAsInts = FirePalette.generateArgbPalette(256);
+        this.engine = ConvolutionEngine.named(System.getProperty(ConvolutionEngine.ENGINE_PROPERTY));
+        this.noise = NoiseSource.fromProperties();
         reallocate();
+        updatePalette();
+        flameTop = screenHeight - 1;
     }
 
     private void reallocate() {
-        fire = new int[screenHeight * screenWidth + 1];  //this buffer will contain the fire
+        fire = new byte[screenHeight * screenWidth + 1];  //this buffer will contain the fire
         fireBuf = new int[screenHeight * screenWidth + 1];
         bottomRow = new int[screenWidth];
     }
 
-    public void genRandomFireRowWidth() {
-        Arrays.setAll(bottomRow, (int operand) -> Math.abs(32768 + rand.nextInt(65536)) % 256);
+    /**
+     * Room for {@code cells} when the current capacity is too small, with a quarter more
+     * so a window that is dragged larger does not reallocate on every step.
+     */
+    static int grownCapacity(int cells, int capacity) {
+        return capacity >= cells ? capacity : cells + cells / 4;
     }
 
-    private int[] generateArgbPalette(int max ) {
-        int [] pal = new int[max];
-        //generate the palette
-        for (int x = 0; x < max; x++) {
-            //HSLtoRGB is used to generate colors:
-            //Hue goes from 0 to 85: red to yellow
-            //Saturation is always the maximum: 255
-            //Lightness is 0..255 for x=0..128, and 255 for x=128..255
-            //color = HSLtoRGB(ColorHSL(x / 3, 255, std::min(255, x * 2)));
-            //set the palette to the calculated RGB value
-            //palette[x] = RGBtoINT();
-            double brightness = Math.min(255, x*2) / 255.0;
-            Color color = Color.hsb(x / 3.0, 1.0, brightness , 1);
-            pal[x] = rgbToIntArgb(color);
+    /**
+     * Change the field size between frames and keep the fire burning.
+     *
+     * The heat field is resampled into the new size: columns are stretched or squeezed to the
+     * new width, rows stay aligned to the seed row, because the flame height is set by the
+     * decay per row and not by the window. A taller field gets cold rows on top, a shorter
+     * one loses its top rows. The fire and frame arrays are reused when they are big enough
+     * and grow with some headroom otherwise; the palette is kept. Every row of the next
+     * frame is written, so targets that were colorized before must be fully uploaded again.
+     * A caller's frame buffer ({@link #setFrameBuffer}) is detached first and never written,
+     * it may already be shown on another thread; set the next frame again after resizing.
+     * Must be called on the simulation thread, not while an engine runs.
+     */
+    public void resize(int width, int height) {
+        if (width == screenWidth && height == screenHeight) {
+            return;
+        }
+        if (width < 4 || height < 4) {
+            throw new IllegalArgumentException("Fire field must be at least 4x4, got " + width + "x" + height);
+        }
+        detachFrameBuffer();
+        int oldWidth = screenWidth;
+        int oldHeight = screenHeight;
+        int oldCells = oldWidth * oldHeight;
+        if (resizeScratch.length < oldCells) {
+            resizeScratch = new byte[grownCapacity(oldCells, resizeScratch.length)];
+        }
+        System.arraycopy(fire, 0, resizeScratch, 0, oldCells);
+
+        int cells = width * height;
+        if (fire.length < cells + 1) {
+            fire = new byte[grownCapacity(cells + 1, fire.length)];
+        }
+        if (fireBuf.length < cells + 1) {
+            fireBuf = new int[grownCapacity(cells + 1, fireBuf.length)];
+        }
+        if (bottomRow.length != width) {
+            bottomRow = new int[width];
+        }
+        if (pixelTarget != null && pixelTarget.capacity() < cells) {
+            pixelTarget = null;
+        }
+        screenWidth = width;
+        screenHeight = height;
+
+        int shift = oldHeight - height;     // new row y shows old row y + shift
+        flameTop = height - 1;
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            int oldY = y + shift;
+            if (oldY < 0) {
+                Arrays.fill(fire, row, row + width, (byte) 0);
+                continue;
+            }
+            int oldRow = oldY * oldWidth;
+            byte heat = 0;
+            for (int x = 0; x < width; x++) {
+                byte cell = resizeScratch[oldRow + (int) ((long) x * oldWidth / width)];
+                fire[row + x] = cell;
+                heat |= cell;
+            }
+            if (heat != 0) {
+                flameTop = Math.min(flameTop, y);
+            }
         }
-        return pal;
+        Arrays.fill(fire, cells, fire.length, (byte) 0);
+        // the seed row is never colorized, do not leave pixels of the old layout in it
+        Arrays.fill(fireBuf, cells - width, cells, 0);
+        coldRows.clear();
+        dirtyTop.set(0);
+        heatModCount++;
     }
 
-    private static int rgbToIntArgb(Color colorRGB) {
-        return (int)(colorRGB.getOpacity()*255) << 24 |
-                (int)(colorRGB.getRed()    *255) << 16 |
-                (int)(colorRGB.getGreen()  *255) <<  8 |
-                (int)(colorRGB.getBlue()   *255);
+    public void genRandomFireRowWidth() {
+        FireEvents.Span event = FireEvents.begin(FireEvents.Stage.SEED);
+        noise.fill(bottomRow);
+        event.finish(frameCount, screenWidth, screenHeight, noise, screenWidth * 4L);
     }
 
     public void copyFireRowBottom() {
         int fireStartHeight = (screenHeight - 1) * screenWidth;
-        System.arraycopy(bottomRow, 0, fire, fireStartHeight, screenWidth);
+        for (int x = 0; x < screenWidth; x++) {
+            fire[fireStartHeight + x] = (byte) bottomRow[x];
+        }
+    }
+
+    /**
+     * @return heat of the cell at column x, row y in the range 0..255
+     */
+    public int getHeat(int x, int y) {
+        return fire[y * screenWidth + x] & 0xFF;
+    }
+
+    public void setHeat(int x, int y, int heat) {
+        fire[y * screenWidth + x] = (byte) heat;
+        flameTop = Math.min(flameTop, y);
+        heatModCount++;
+    }
+
+    /**
+     * Copy the heat field into {@code target} as one unsigned byte per cell, row major.
+     */
+    public void copyHeat(byte[] target) {
+        System.arraycopy(fire, 0, target, 0, screenWidth * screenHeight);
+    }
+
+    /**
+     * Replace the heat field with {@code source} (e.g. a decoded {@link HeatCodec} frame) and
+     * colorize it, without advancing the simulation.
+     * @param source screenWidth * screenHeight cells, one unsigned byte each, row major
+     */
+    public void loadHeat(byte[] source) {
+        System.arraycopy(source, 0, fire, 0, screenWidth * screenHeight);
+        heatModCount++;
+        updatePalette();
+        flameTop = findFlameTop(0);
+        int written = fillColdRows(flameTop);
+        for (int y = flameTop; y < screenHeight - 1; y++) {
+            colorizeRow(y);
+        }
+        dirtyTop.accumulateAndGet(written, Math::min);
+    }
+
+    /**
+     * Colorize straight into {@code target}, e.g. the IntBuffer behind a JavaFX PixelBuffer,
+     * instead of filling fireBuf and copying it again. Each finished row is stored with one
+     * bulk put. The buffer must hold screenWidth * screenHeight pixels, row major, in the
+     * layout given by {@link #pixelFormat}.
+     * @param target destination of the colorized frame or null to go back to fireBuf
+     */
+    public void setPixelTarget(IntBuffer target) {
+        this.pixelTarget = target;
+    }
+
+    /**
+     * Colorize into {@code argb} instead of the model's own fireBuf, so callers can rotate
+     * between preallocated frames (see {@link TripleBuffer}).
+     * @param argb at least screenWidth * screenHeight pixels
+     */
+    public void setFrameBuffer(int[] argb) {
+        if (argb.length < screenWidth * screenHeight) {
+            throw new IllegalArgumentException("Frame buffer holds " + argb.length
+                    + " pixels, needs " + screenWidth * screenHeight);
+        }
+        if (ownFrameBuffer == null) {
+            ownFrameBuffer = fireBuf;
+        }
+        this.fireBuf = argb;
+    }
+
+    /**
+     * Colorize into the model's own fireBuf again after {@link #setFrameBuffer}, so a frame the
+     * caller has handed on (e.g. published to the FX thread) is no longer written. Does nothing
+     * when no caller's frame is set.
+     */
+    public void detachFrameBuffer() {
+        if (ownFrameBuffer == null) {
+            return;
+        }
+        int cells = screenWidth * screenHeight;
+        fireBuf = ownFrameBuffer.length >= cells + 1 ? ownFrameBuffer : new int[grownCapacity(cells + 1, ownFrameBuffer.length)];
+        ownFrameBuffer = null;
+        // the own frame missed the frames colorized meanwhile
+        dirtyTop.set(0);
     }
 
     public void convolution() {
+        FireEvents.Span event = FireEvents.begin(FireEvents.Stage.CONVOLUTION);
+        updatePalette();
+        // a row stays cold when the rows it reads are cold
+        int active = Math.max(0, flameTop - FireKernel.TAP_ROWS);
+        int written = fillColdRows(active);
+        firstActiveRow = active;
+        engine.convolve(this);
+        flameTop = findFlameTop(active);
+        dirtyTop.accumulateAndGet(written, Math::min);
+        frameCount++;
+        // heat bytes of the active rows and pixels of every row written, cold fill included
+        event.finish(frameCount, screenWidth, screenHeight, engine,
+                ((long) (screenHeight - 1 - active) + 4L * (screenHeight - 1 - written)) * screenWidth);
+    }
+
+    /**
+     * @return the first row holding any heat after the last frame, the rows above it are black
+     */
+    public int getFlameTop() {
+        return flameTop;
+    }
+
+    /**
+     * Rows of the output target changed since the previous call, for presenters that
+     * upload a dirty region (e.g. a PixelBuffer's updateBuffer callback).
+     * @return first changed row; rows [top, screenHeight - 1) need uploading, none when
+     * it returns screenHeight - 1 (the seed row is never colorized)
+     */
+    public int takeDirtyTop() {
+        return dirtyTop.getAndSet(screenHeight - 1);
+    }
+
+    private int findFlameTop(int from) {
+        for (int y = from; y < screenHeight - 1; y++) {
+            for (int index = y * screenWidth, end = index + screenWidth; index < end; index++) {
+                if (fire[index] != 0) {
+                    return y;
+                }
+            }
+        }
+        return screenHeight - 1;
+    }
+
+    /**
+     * Make sure rows [0, top) of the current target hold the color of heat 0.
+     * @return the first target row written by this frame
+     */
+    private int fillColdRows(int top) {
+        int filled = coldRows.claim(pixelTarget != null ? pixelTarget : fireBuf, lut, top);
+        if (filled < top) {
+            if (pixelTarget == null) {
+                Arrays.fill(fireBuf, filled * screenWidth, top * screenWidth, lut[0]);
+            } else {
+                RowWriter writer = rowWriters.get();
+                int[] cold = writer.row(screenWidth);
+                Arrays.fill(cold, 0, screenWidth, lut[0]);
+                for (int y = filled; y < top; y++) {
+                    writer.put(pixelTarget, y * screenWidth, cold, screenWidth);
+                }
+            }
+        }
+        return Math.min(filled, top);
+    }
+
+    /**
+     * Sequential in-place pass over rows [yFrom, yTo). Rows are visited top-down so each
+     * row still sees the previous frame's values of the rows below it.
+     */
+    void convolveRows(int yFrom, int yTo) {
+        for (int y = yFrom; y < yTo; y++) {
+            FireKernel.convolveRow(fire, screenWidth, screenHeight, y);
+            colorizeRow(y);
+        }
+    }
+
+    /**
+     * Switch to the table of the current classic, shift and pixel format settings. Called between frames,
+     * so every row of a frame is colorized with the same table even when the settings are
+     * changed by another thread meanwhile.
+     */
+    void updatePalette() {
+        IntBuffer target = pixelTarget;
+        lut = palettes.lookup(paletteAsInts, classic, shift1, shift2, shift3, pixelFormat,
+                target != null ? target.order() : ByteOrder.nativeOrder());
+    }
+
+    void colorizeRow(int y) {
+        colorizeRange(y, 0, screenWidth);
+    }
+
+    /**
+     * Colorize columns [xFrom, xTo) of row y, for engines that finish a row in pieces.
+     */
+    void colorizeRange(int y, int xFrom, int xTo) {
+        int row = y * screenWidth;
+        int[] lut = this.lut;
+        if (pixelTarget == null) {
+            for (int index = row + xFrom; index < row + xTo; index++) {
+                fireBuf[index] = lut[fire[index] & 0xFF];
+            }
+            return;
+        }
+        RowWriter writer = rowWriters.get();
+        int length = xTo - xFrom;
+        int[] argb = writer.row(length);
+        for (int x = 0; x < length; x++) {
+            argb[x] = lut[fire[row + xFrom + x] & 0xFF];
+        }
+        writer.put(pixelTarget, row + xFrom, argb, length);
+    }
+
+    /**
+     * Store a finished row of ARGB pixels in the current target.
+     */
+    void writeRow(int y, int[] argb) {
+        if (pixelTarget == null) {
+            System.arraycopy(argb, 0, fireBuf, y * screenWidth, screenWidth);
+        } else {
+            rowWriters.get().put(pixelTarget, y * screenWidth, argb, screenWidth);
+        }
+    }
+
+    /**
+     * The original per pixel modulo and divide formulation, kept to check the other engines against.
+     */
+    void convolveReference(int yFrom, int yTo) {
         int a, b;
         int row, pixel;
-        for (int y = 0; y < screenHeight - 1; y++) {
+        for (int y = yFrom; y < yTo; y++) {
             a = (y + 1) % screenHeight * screenWidth;
             row = y * screenWidth;
             for (int x = 0; x < screenWidth; x++) {
                 b = x % screenWidth;
                 int index = row + x;
-                pixel = fire[index]
-                        = ((fire[a + ((x - 1 + screenWidth) % screenWidth)]
-                        + fire[((y + 2) % screenHeight) * screenWidth + b]
-                        + fire[a + ((x + 1) % screenHeight)]
-                        + fire[((y + 3) % screenHeight * screenWidth) + b])
+                pixel = (((fire[a + ((x - 1 + screenWidth) % screenWidth)] & 0xFF)
+                        + (fire[((y + 2) % screenHeight) * screenWidth + b] & 0xFF)
+                        + (fire[a + ((x + 1) % screenWidth)] & 0xFF)
+                        + (fire[((y + 3) % screenHeight * screenWidth) + b] & 0xFF))
                         * 128) / 513;
-                fireBuf[index] = getPaletteValue(pixel);
+                fire[index] = (byte) pixel;
             }
+            colorizeRow(y);
         }
     }
 
-    private int getPaletteValue(int pixelIndex) {
-        if(classic)
-            return paletteAsInts[pixelIndex];
-        int value = 0;
-        if(shift1 > -1)
-            value |= paletteAsInts[pixelIndex] << shift1;
-        if(shift2 > -1)
-            value |= paletteAsInts[pixelIndex] << shift2;
-        if(shift3 > -1)
-            value |= paletteAsInts[pixelIndex] << shift3;
-        return value;
-    }
-
-    public WritableImage copyWritable(WritablePixelFormat<IntBuffer> pixelFormat) {
-        PixelWriter pwBuffer = writableImage.getPixelWriter();
-        try {
-            pwBuffer.setPixels(0, 0, screenWidth, screenHeight, pixelFormat, fireBuf, 0, screenWidth);
-        } catch (Throwable th) {
-            th.printStackTrace();
-        }
-        return writableImage;
-    }
-
     public void cleanup() {
-        writableImage.cancel();
-        writableImage = null;
-
         fire = null;         //this buffer will contain the fire
         fireBuf = null;      //double buffer
+        ownFrameBuffer = null;
         bottomRow = null;    //seeds of flames randomly generated
         paletteAsInts = null;
+        lut = null;
+        coldRows.clear();
+        pixelTarget = null;
+    }
+
+    /**
+     * Per thread row scratch and a private view of the pixel target, so engines that
+     * colorize rows in parallel do not share the buffer position.
+     */
+    private static final class RowWriter {
+        int[] row = new int[0];
+        IntBuffer target;
+        IntBuffer view;
+
+        int[] row(int width) {
+            if (row.length < width) {
+                row = new int[width];
+            }
+            return row;
+        }
+
+        void put(IntBuffer target, int index, int[] argb, int length) {
+            if (this.target != target) {
+                this.target = target;
+                this.view = target.duplicate();
+            }
+            view.position(index);
+            view.put(argb, 0, length);
+        }
     }
 }
+
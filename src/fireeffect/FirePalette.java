@@ -0,0 +1,66 @@
+package fireeffect;
+
+/**
+ * Palette generation without JavaFX. Reproduces what
+ * {@code Color.hsb(hue, 1.0, brightness, 1)} gives for the classic fire colors, including
+ * Color keeping its components as floats, so the ARGB values are identical.
+ * @author cpdea
+ */
+public final class FirePalette {
+    private FirePalette() {
+    }
+
+    /**
+     * Classic fire palette: hue goes from 0 to 85 (red to yellow), saturation is always the
+     * maximum and brightness ramps up over the first half of the entries.
+     * @param max number of entries, 256 for 8 bit heat
+     * @return opaque ARGB colors
+     */
+    public static int[] generateArgbPalette(int max) {
+        int[] pal = new int[max];
+        for (int x = 0; x < max; x++) {
+            //HSLtoRGB is used to generate colors:
+            //Hue goes from 0 to 85: red to yellow
+            //Saturation is always the maximum: 255
+            //Lightness is 0..255 for x=0..128, and 255 for x=128..255
+            double brightness = Math.min(255, x * 2) / 255.0;
+            pal[x] = hsbToIntArgb(x / 3.0, 1.0, brightness, 1.0);
+        }
+        return pal;
+    }
+
+    /**
+     * Same conversion as javafx.scene.paint.Color.hsb followed by packing the
+     * float components into an ARGB int.
+     */
+    public static int hsbToIntArgb(double hue, double saturation, double brightness, double opacity) {
+        double normalizedHue = ((hue % 360) + 360) % 360;
+        hue = normalizedHue / 360;
+
+        double r = 0, g = 0, b = 0;
+        if (saturation == 0) {
+            r = g = b = brightness;
+        } else {
+            double h = (hue - Math.floor(hue)) * 6.0;
+            double f = h - Math.floor(h);
+            double p = brightness * (1.0 - saturation);
+            double q = brightness * (1.0 - saturation * f);
+            double t = brightness * (1.0 - (saturation * (1.0 - f)));
+            switch ((int) h) {
+                case 0: r = brightness; g = t; b = p; break;
+                case 1: r = q; g = brightness; b = p; break;
+                case 2: r = p; g = brightness; b = t; break;
+                case 3: r = p; g = q; b = brightness; break;
+                case 4: r = t; g = p; b = brightness; break;
+                case 5: r = brightness; g = p; b = q; break;
+                default: break;
+            }
+        }
+        return component(opacity) << 24 | component(r) << 16 | component(g) << 8 | component(b);
+    }
+
+    private static int component(double value) {
+        // Color stores each component as a float
+        return (int) ((double) (float) value * 255);
+    }
+}
@@ -0,0 +1,55 @@
+package fireeffect;
+
+import java.nio.ByteOrder;
+
+/**
+ * Pixel layouts the model can colorize into, named after their JavaFX PixelFormat.Type.
+ * The compiled palette is converted to the layout once, so frames need no conversion pass
+ * on their way to a surface that uses the same layout natively.
+ * @author cpdea
+ */
+public enum FirePixelFormat {
+    /** One int per pixel, 0xAARRGGBB, not premultiplied. */
+    INT_ARGB,
+    /** One int per pixel, 0xAARRGGBB, color components premultiplied by alpha. */
+    INT_ARGB_PRE,
+    /**
+     * Four bytes per pixel in B, G, R, A memory order, premultiplied. Written through a
+     * little endian IntBuffer view these are INT_ARGB_PRE ints, other views get them byte swapped.
+     */
+    BYTE_BGRA_PRE;
+
+    public boolean isPremultiplied() {
+        return this != INT_ARGB;
+    }
+
+    /**
+     * Convert a non premultiplied ARGB color to this layout.
+     * @param order byte order of the IntBuffer the value is stored through, only used by byte layouts
+     */
+    public int convert(int argb, ByteOrder order) {
+        int value = isPremultiplied() ? premultiply(argb) : argb;
+        if (this == BYTE_BGRA_PRE && order == ByteOrder.BIG_ENDIAN) {
+            value = Integer.reverseBytes(value);
+        }
+        return value;
+    }
+
+    /**
+     * Premultiply the color components by alpha, rounding like JavaFX does
+     * ((c * a + 127) / 255), so the result equals the toolkit's own conversion.
+     */
+    public static int premultiply(int argb) {
+        int a = argb >>> 24;
+        if (a == 0xFF) {
+            return argb;
+        }
+        if (a == 0) {
+            return 0;
+        }
+        int r = ((argb >> 16) & 0xFF) * a + 127;
+        int g = ((argb >> 8) & 0xFF) * a + 127;
+        int b = (argb & 0xFF) * a + 127;
+        return a << 24 | (r / 255) << 16 | (g / 255) << 8 | (b / 255);
+    }
+}
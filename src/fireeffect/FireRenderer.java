@@ -0,0 +1,233 @@
+package fireeffect;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Command line renderer that writes fire frames to disk as fast as the CPU allows.
+ *
+ * The calling thread runs the simulation without any pacing. Finished frames go to a
+ * fixed pool of encoder threads. A bounded set of frame buffers is recycled between the
+ * two, so the simulation only waits when every buffer is still being encoded.
+ *
+ * <pre>
+ * java -cp FireEffect.jar fireeffect.FireRenderer -width 1920 -height 1080 -frames 600 -format png -out frames
+ * </pre>
+ * Options: -width, -height, -frames, -warmup (frames simulated before the first one written),
+ * -format (raw, ppm or png), -out (directory), -encoders (threads), -waves s1,s2,s3 for the
+ * "Waves of Fire" palette and -seed to render the same sequence on every run.
+ * @author cpdea
+ */
+public class FireRenderer {
+    public enum Format {
+        RAW("rgba"), PPM("ppm"), PNG("png");
+
+        final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    int width = 1280;
+    int height = 720;
+    int frames = 300;
+    int warmup = 120;
+    Format format = Format.PNG;
+    Path outputDir = Paths.get("frames");
+    int encoders = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    boolean classic = true;
+    int shift1 = 16, shift2 = 8, shift3 = 1;
+    Long seed;                      // fixed noise seed for reproducible sequences
+
+    public static void main(String[] args) throws Exception {
+        FireRenderer renderer = new FireRenderer();
+        try {
+            renderer.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: FireRenderer [-width 1280] [-height 720] [-frames 300] [-warmup 120]"
+                    + " [-format raw|ppm|png] [-out frames] [-encoders n] [-waves 16,8,1] [-seed n]");
+            System.exit(1);
+        }
+        renderer.render();
+    }
+
+    void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "-width": width = Integer.parseInt(value); break;
+                case "-height": height = Integer.parseInt(value); break;
+                case "-frames": frames = Integer.parseInt(value); break;
+                case "-warmup": warmup = Integer.parseInt(value); break;
+                case "-format": format = Format.valueOf(value.toUpperCase(Locale.ROOT)); break;
+                case "-out": outputDir = Paths.get(value); break;
+                case "-encoders": encoders = Math.max(1, Integer.parseInt(value)); break;
+                case "-seed": seed = Long.parseLong(value); break;
+                case "-waves":
+                    String[] shifts = value.split(",");
+                    if (shifts.length != 3) {
+                        throw new IllegalArgumentException("-waves needs three shifts, e.g. 16,8,1");
+                    }
+                    classic = false;
+                    shift1 = Integer.parseInt(shifts[0].trim());
+                    shift2 = Integer.parseInt(shifts[1].trim());
+                    shift3 = Integer.parseInt(shifts[2].trim());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+        if (width < 4 || height < 4) {
+            throw new IllegalArgumentException("The fire needs to be at least 4x4");
+        }
+    }
+
+    public void render() throws IOException, InterruptedException {
+        Files.createDirectories(outputDir);
+        FireModel fireModel = new FireModel(width, height);
+        fireModel.classic = classic;
+        fireModel.shift1 = shift1;
+        fireModel.shift2 = shift2;
+        fireModel.shift3 = shift3;
+        if (seed != null) {
+            fireModel.noise = NoiseSource.named(System.getProperty(NoiseSource.NOISE_PROPERTY), seed);
+        }
+
+        // let the flames climb before the first frame is written
+        for (int i = 0; i < warmup; i++) {
+            fireModel.genRandomFireRowWidth();
+            fireModel.copyFireRowBottom();
+            fireModel.convolution();
+        }
+
+        // two buffers per encoder keeps every encoder busy while the next frames are simulated
+        BlockingQueue<FireFrame> freeFrames = new ArrayBlockingQueue<>(encoders * 2);
+        for (int i = 0; i < encoders * 2; i++) {
+            FireFrame frame = new FireFrame();
+            frame.ensureSize(width, height);
+            freeFrames.add(frame);
+        }
+        ThreadPoolExecutor encoderPool = new ThreadPoolExecutor(encoders, encoders, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(encoders * 2), runnable -> {
+                    Thread thread = new Thread(runnable, "fire-encoder");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        long startTime = System.nanoTime();
+        long simulationNanos = 0;
+        for (int i = 0; i < frames && failure.get() == null; i++) {
+            FireFrame frame = freeFrames.take();
+            long markTime = System.nanoTime();
+            fireModel.setFrameBuffer(frame.pixels);
+            fireModel.genRandomFireRowWidth();
+            fireModel.copyFireRowBottom();
+            fireModel.convolution();
+            frame.frameNumber = i;
+            simulationNanos += System.nanoTime() - markTime;
+
+            encoderPool.execute(() -> {
+                try {
+                    write(frame);
+                } catch (Throwable th) {
+                    failure.compareAndSet(null, th);
+                } finally {
+                    freeFrames.add(frame);
+                }
+            });
+        }
+        encoderPool.shutdown();
+        encoderPool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+        if (failure.get() != null) {
+            throw new IOException("Encoding failed", failure.get());
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.out.println(String.format(Locale.ROOT,
+                "Wrote %d %s frames of %dx%d to %s in %.2fs (%.1f fps, simulation %.1f fps)",
+                frames, format.extension, width, height, outputDir, seconds,
+                frames / seconds, frames / (simulationNanos / 1e9)));
+    }
+
+    private void write(FireFrame frame) throws IOException {
+        Path file = outputDir.resolve(String.format(Locale.ROOT, "fire_%05d.%s", frame.frameNumber, format.extension));
+        switch (format) {
+            case RAW:
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+                    writeRgba(frame, out);
+                }
+                break;
+            case PPM:
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+                    writePpm(frame, out);
+                }
+                break;
+            case PNG:
+                writePng(frame, file);
+                break;
+        }
+    }
+
+    /**
+     * Raw frames, 4 bytes per pixel in R, G, B, A order, e.g. for ffmpeg -f rawvideo -pix_fmt rgba.
+     */
+    static void writeRgba(FireFrame frame, OutputStream out) throws IOException {
+        byte[] row = new byte[frame.width * 4];
+        for (int y = 0; y < frame.height; y++) {
+            int offset = y * frame.width;
+            for (int x = 0, i = 0; x < frame.width; x++) {
+                int argb = frame.pixels[offset + x];
+                row[i++] = (byte) (argb >> 16);
+                row[i++] = (byte) (argb >> 8);
+                row[i++] = (byte) argb;
+                row[i++] = (byte) (argb >>> 24);
+            }
+            out.write(row);
+        }
+    }
+
+    /**
+     * Binary PPM (P6), alpha is dropped.
+     */
+    static void writePpm(FireFrame frame, OutputStream out) throws IOException {
+        out.write(("P6\n" + frame.width + " " + frame.height + "\n255\n").getBytes("US-ASCII"));
+        byte[] row = new byte[frame.width * 3];
+        for (int y = 0; y < frame.height; y++) {
+            int offset = y * frame.width;
+            for (int x = 0, i = 0; x < frame.width; x++) {
+                int argb = frame.pixels[offset + x];
+                row[i++] = (byte) (argb >> 16);
+                row[i++] = (byte) (argb >> 8);
+                row[i++] = (byte) argb;
+            }
+            out.write(row);
+        }
+    }
+
+    static void writePng(FireFrame frame, Path file) throws IOException {
+        BufferedImage image = new BufferedImage(frame.width, frame.height, BufferedImage.TYPE_INT_ARGB);
+        int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        System.arraycopy(frame.pixels, 0, data, 0, frame.width * frame.height);
+        ImageIO.write(image, "png", file.toFile());
+    }
+}
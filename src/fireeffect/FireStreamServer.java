@@ -0,0 +1,293 @@
+package fireeffect;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves the fire as an MJPEG stream over HTTP, for browsers and signage players that can not
+ * run JavaFX. Uses only the JDK's HTTP server and JPEG encoder.
+ *
+ * One thread simulates the fire at a fixed rate, colorizing straight into a BufferedImage, and
+ * encodes every frame once into a complete multipart chunk. All clients write that same byte
+ * array. A client always sends the newest frame when it is done with the previous one, so slow
+ * clients skip frames instead of buffering them and no client adds encoding work.
+ * Nothing is encoded while no client is connected.
+ *
+ * <pre>
+ * java -cp FireEffect.jar fireeffect.FireStreamServer -port 8080 -width 640 -height 360 -fps 25
+ * </pre>
+ * Then open http://localhost:8080/ (page), /stream.mjpg (the stream) or /frame.jpg (one frame).
+ * Options: -port, -bind, -width, -height, -fps, -quality (0..1), -waves s1,s2,s3 and -seed,
+ * like {@link FireRenderer}. The stream has no authentication, so it only listens on loopback
+ * unless -bind names another address (e.g. 0.0.0.0 for every interface).
+ * @author cpdea
+ */
+public class FireStreamServer {
+    static final String BOUNDARY = "fireframe";
+
+    int port = 8080;
+    String bind = "127.0.0.1";     // loopback only, -bind opts in to other interfaces
+    int width = 640;
+    int height = 360;
+    double fps = 25;
+    float quality = 0.8f;
+    boolean classic = true;
+    int shift1 = 16, shift2 = 8, shift3 = 1;
+    Long seed;
+
+    private HttpServer server;
+    private ExecutorService clientThreads;
+    private Thread simulation;
+    private final AtomicInteger clients = new AtomicInteger();
+    private final Object frameLock = new Object();
+    private volatile Frame latest;          // newest encoded frame, guarded by frameLock for waiting
+
+    /**
+     * One encoded frame: a complete multipart chunk with the JPEG inside it.
+     */
+    static final class Frame {
+        final long number;
+        final byte[] part;
+        final int jpegOffset, jpegLength;
+
+        Frame(long number, byte[] part, int jpegOffset, int jpegLength) {
+            this.number = number;
+            this.part = part;
+            this.jpegOffset = jpegOffset;
+            this.jpegLength = jpegLength;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        FireStreamServer streamServer = new FireStreamServer();
+        try {
+            streamServer.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: FireStreamServer [-port 8080] [-bind 127.0.0.1] [-width 640] [-height 360]"
+                    + " [-fps 25] [-quality 0.8] [-waves 16,8,1] [-seed n]");
+            System.exit(1);
+        }
+        streamServer.start();
+        System.out.println(String.format(Locale.ROOT, "Streaming %dx%d at %.0f fps on http://%s:%d/",
+                streamServer.width, streamServer.height - 1, streamServer.fps, streamServer.bind, streamServer.port));
+    }
+
+    void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "-port": port = Integer.parseInt(value); break;
+                case "-bind": bind = value; break;
+                case "-width": width = Integer.parseInt(value); break;
+                case "-height": height = Integer.parseInt(value); break;
+                case "-fps": fps = Double.parseDouble(value); break;
+                case "-quality": quality = Float.parseFloat(value); break;
+                case "-seed": seed = Long.parseLong(value); break;
+                case "-waves":
+                    String[] shifts = value.split(",");
+                    if (shifts.length != 3) {
+                        throw new IllegalArgumentException("-waves needs three shifts, e.g. 16,8,1");
+                    }
+                    classic = false;
+                    shift1 = Integer.parseInt(shifts[0].trim());
+                    shift2 = Integer.parseInt(shifts[1].trim());
+                    shift3 = Integer.parseInt(shifts[2].trim());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+        if (width < 4 || height < 4) {
+            throw new IllegalArgumentException("The fire needs to be at least 4x4");
+        }
+    }
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(bind, port), 0);
+        // a streaming client keeps its thread for as long as it watches
+        clientThreads = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "fire-stream-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(clientThreads);
+        server.createContext("/stream.mjpg", this::stream);
+        server.createContext("/frame.jpg", this::singleFrame);
+        server.createContext("/", this::page);
+        server.start();
+
+        simulation = new Thread(this::simulate, "fire-stream-simulation");
+        simulation.setDaemon(true);
+        simulation.start();
+    }
+
+    public void stop() {
+        simulation.interrupt();
+        server.stop(0);
+        clientThreads.shutdownNow();
+    }
+
+    public int getClients() {
+        return clients.get();
+    }
+
+    private void simulate() {
+        FireModel fireModel = new FireModel(width, height);
+        fireModel.classic = classic;
+        fireModel.shift1 = shift1;
+        fireModel.shift2 = shift2;
+        fireModel.shift3 = shift3;
+        if (seed != null) {
+            fireModel.noise = NoiseSource.named(System.getProperty(NoiseSource.NOISE_PROPERTY), seed);
+        }
+        // colorize straight into the image, the seed row below the visible part is never colorized
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        fireModel.setFrameBuffer(((DataBufferInt) image.getRaster().getDataBuffer()).getData());
+        BufferedImage visible = image.getSubimage(0, 0, width, height - 1);
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream(width * height / 4);
+
+        FramePacer pacer = new FramePacer(fps);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                fireModel.genRandomFireRowWidth();
+                fireModel.copyFireRowBottom();
+                fireModel.convolution();
+                if (clients.get() > 0) {
+                    jpeg.reset();
+                    try (MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(jpeg)) {
+                        writer.setOutput(out);
+                        writer.write(null, new IIOImage(visible, null, null), param);
+                    }
+                    publish(fireModel.frameCount, jpeg);
+                }
+                pacer.awaitNextFrame();
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Wrap the JPEG into the multipart chunk every client sends and wake the clients.
+     */
+    private void publish(long number, ByteArrayOutputStream jpeg) {
+        byte[] header = ("--" + BOUNDARY + "\r\nContent-Type: image/jpeg\r\nContent-Length: " + jpeg.size() + "\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII);
+        byte[] part = new byte[header.length + jpeg.size() + 2];
+        System.arraycopy(header, 0, part, 0, header.length);
+        byte[] encoded = jpeg.toByteArray();
+        System.arraycopy(encoded, 0, part, header.length, encoded.length);
+        part[part.length - 2] = '\r';
+        part[part.length - 1] = '\n';
+        synchronized (frameLock) {
+            latest = new Frame(number, part, header.length, encoded.length);
+            frameLock.notifyAll();
+        }
+    }
+
+    /**
+     * @return the first frame newer than {@code after}
+     */
+    private Frame awaitFrame(long after) throws InterruptedException {
+        synchronized (frameLock) {
+            while (latest == null || latest.number <= after) {
+                frameLock.wait();
+            }
+            return latest;
+        }
+    }
+
+    private void stream(HttpExchange exchange) throws IOException {
+        clients.incrementAndGet();
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "multipart/x-mixed-replace; boundary=" + BOUNDARY);
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache, no-store");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            long sent = -1;
+            while (true) {
+                // frames published while the last write was in flight are skipped
+                Frame frame = awaitFrame(sent);
+                out.write(frame.part);
+                out.flush();
+                sent = frame.number;
+            }
+        } catch (IOException e) {
+            // the client went away
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            clients.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private void singleFrame(HttpExchange exchange) throws IOException {
+        clients.incrementAndGet();
+        try {
+            Frame frame = latest;
+            if (frame == null) {
+                frame = awaitFrame(-1);
+            }
+            exchange.getResponseHeaders().set("Content-Type", "image/jpeg");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache, no-store");
+            exchange.sendResponseHeaders(200, frame.jpegLength);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(frame.part, frame.jpegOffset, frame.jpegLength);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            clients.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private void page(HttpExchange exchange) throws IOException {
+        if (!"/".equals(exchange.getRequestURI().getPath())) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        byte[] html = ("<!DOCTYPE html><html><head><title>FireEffect</title></head>"
+                + "<body style=\"margin:0;background:#000\">"
+                + "<img src=\"/stream.mjpg\" style=\"width:100vw;height:100vh;object-fit:fill\" alt=\"fire\">"
+                + "</body></html>").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(200, html.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(html);
+        }
+    }
+}
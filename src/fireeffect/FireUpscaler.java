@@ -0,0 +1,171 @@
+package fireeffect;
+
+import java.util.Arrays;
+
+/**
+ * Colorizes a low resolution {@link FireModel} into a larger frame, so big windows can run the
+ * simulation at 1/2, 1/3 or 1/4 of their size. The fire is a soft blur anyway, so the
+ * difference is hard to see while the simulation cost drops with the square of the scale.
+ *
+ * The source row and column of every output pixel (and for bilinear filtering the blend
+ * weights, in 1/256) are computed once per size. Bilinear filtering widens each source row
+ * once and blends two widened rows per output row. Heat is interpolated before the palette
+ * lookup, so bilinear output stays on the palette's colors. Output rows that map to the same
+ * source rows are copied and rows above the flame top are only filled with the cold color
+ * when the frame does not hold it yet.
+ * The seed row is never shown, like in the full resolution frames.
+ * @author cpdea
+ */
+public class FireUpscaler {
+    public static final String SCALE_PROPERTY = "fireeffect.scale";     // 1..4 or auto
+    public static final String FILTER_PROPERTY = "fireeffect.upscale";  // nearest or bilinear
+    public static final int MAX_SCALE = 4;
+    static final int AUTO_SCALE_CELLS = 1280 * 720;                      // simulated cells to aim for
+
+    public enum Filter {
+        NEAREST, BILINEAR
+    }
+
+    public final int sourceWidth, sourceHeight;
+    public final int width, height;
+    public final Filter filter;
+
+    private final int[] columns0, columns1, columnWeights;
+    private final int[] rows0, rows1, rowWeights;
+    private int[] upper, lower;          // source rows upscaled horizontally, heat * 256
+    private int upperRow = -1, lowerRow = -1;
+    private final ColdRows coldRows = new ColdRows();
+
+    /**
+     * @param sourceWidth model columns
+     * @param sourceHeight model rows, including the seed row
+     * @param width output columns
+     * @param height output rows
+     */
+    public FireUpscaler(int sourceWidth, int sourceHeight, int width, int height, Filter filter) {
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.width = width;
+        this.height = height;
+        this.filter = filter;
+        columns0 = new int[width];
+        columns1 = new int[width];
+        columnWeights = new int[width];
+        rows0 = new int[height];
+        rows1 = new int[height];
+        rowWeights = new int[height];
+        map(sourceWidth, width, columns0, columns1, columnWeights);
+        map(sourceHeight - 1, height, rows0, rows1, rowWeights);
+        upper = new int[width];
+        lower = new int[width];
+    }
+
+    private void map(int sources, int targets, int[] first, int[] second, int[] weights) {
+        for (int i = 0; i < targets; i++) {
+            if (filter == Filter.NEAREST) {
+                first[i] = second[i] = (int) ((long) i * sources / targets);
+                continue;
+            }
+            // sample at pixel centers
+            double position = Math.max(0, (i + 0.5) * sources / targets - 0.5);
+            int index = Math.min((int) position, sources - 1);
+            first[i] = index;
+            second[i] = Math.min(index + 1, sources - 1);
+            weights[i] = (int) ((position - index) * 256);
+        }
+    }
+
+    /**
+     * Simulation scale for a window: 1 up to about 1280x720, then the smallest scale that brings
+     * the field back to that size, at most {@link #MAX_SCALE}. The {@value #SCALE_PROPERTY}
+     * property overrides it with a fixed scale.
+     */
+    public static int pickScale(int width, int height) {
+        String fixed = System.getProperty(SCALE_PROPERTY, "auto");
+        int scale;
+        if ("auto".equalsIgnoreCase(fixed.trim())) {
+            scale = (int) Math.ceil(Math.sqrt((double) width * height / AUTO_SCALE_CELLS));
+        } else {
+            scale = Integer.parseInt(fixed.trim());
+        }
+        scale = Math.max(1, Math.min(MAX_SCALE, scale));
+        // keep the model at least 4x4
+        while (scale > 1 && (width / scale < 4 || height / scale < 4)) {
+            scale--;
+        }
+        return scale;
+    }
+
+    /**
+     * @return the {@value #FILTER_PROPERTY} filter, bilinear unless nearest is asked for
+     */
+    public static Filter filterFromProperties() {
+        return "nearest".equalsIgnoreCase(System.getProperty(FILTER_PROPERTY, "bilinear").trim())
+                ? Filter.NEAREST : Filter.BILINEAR;
+    }
+
+    private void widen(byte[] fire, int sourceRow, int[] heats) {
+        int row = sourceRow * sourceWidth;
+        for (int x = 0; x < width; x++) {
+            int fx = columnWeights[x];
+            heats[x] = (fire[row + columns0[x]] & 0xFF) * (256 - fx) + (fire[row + columns1[x]] & 0xFF) * fx;
+        }
+    }
+
+    /**
+     * Colorize the model's current heat field into {@code argb} at the output size,
+     * in the model's pixel format.
+     * @param argb at least width * height pixels
+     */
+    public void upscale(FireModel model, int[] argb) {
+        byte[] fire = model.fire;
+        int[] lut = model.lut;
+        // output rows that only read rows above the flame top are cold
+        int flameTop = model.getFlameTop();
+        int coldTop = 0;
+        while (coldTop < height && rows1[coldTop] < flameTop) {
+            coldTop++;
+        }
+        int filled = coldRows.claim(argb, lut, coldTop);
+        if (filled < coldTop) {
+            Arrays.fill(argb, filled * width, coldTop * width, lut[0]);
+        }
+
+        for (int y = coldTop; y < height; y++) {
+            int out = y * width;
+            int r0 = rows0[y], r1 = rows1[y], fy = rowWeights[y];
+            if (y > 0 && r0 == rows0[y - 1] && r1 == rows1[y - 1] && fy == rowWeights[y - 1]) {
+                System.arraycopy(argb, out - width, argb, out, width);
+                continue;
+            }
+            if (filter == Filter.NEAREST) {
+                int row = r0 * sourceWidth;
+                for (int x = 0; x < width; x++) {
+                    argb[out + x] = lut[fire[row + columns0[x]] & 0xFF];
+                }
+                continue;
+            }
+            // both source rows are widened once, each output row only blends them vertically
+            if (upperRow != r0) {
+                if (lowerRow == r0) {
+                    int[] swap = upper;
+                    upper = lower;
+                    lower = swap;
+                    lowerRow = -1;
+                } else {
+                    widen(fire, r0, upper);
+                }
+                upperRow = r0;
+            }
+            if (lowerRow != r1) {
+                widen(fire, r1, lower);
+                lowerRow = r1;
+            }
+            for (int x = 0; x < width; x++) {
+                argb[out + x] = lut[(upper[x] * (256 - fy) + lower[x] * fy + 0x8000) >>> 16];
+            }
+        }
+        // the next frame has new heat in these rows
+        upperRow = lowerRow = -1;
+    }
+}
@@ -0,0 +1,278 @@
+package fireeffect;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Runs many {@link FireModel}s on one fixed pool of worker threads instead of a sleeping
+ * thread per fire, e.g. for dashboards with dozens of small fires.
+ *
+ * Every model is added as an {@link Instance} with its own frame rate. One clock thread
+ * releases the frames when they are due (on a fixed grid, like {@link FramePacer}) and a
+ * work stealing ForkJoinPool sized to the cores runs them, so a worker that finished its
+ * fires takes frames queued behind a slow one. A frame is skipped when the previous frame of
+ * the same instance still runs, so a model is only ever advanced by one thread at a time and
+ * never builds a backlog.
+ *
+ * Total CPU use is capped with a budget of worker time per second
+ * ({@value #CPU_CAP_PROPERTY} cores, all of them by default). Frames released while the budget
+ * is spent are skipped. Models should use a single threaded engine, the pool already runs
+ * the fires in parallel.
+ * <pre>
+ * FireWorkerPool pool = new FireWorkerPool();
+ * FireWorkerPool.Instance fire = pool.add(new FireModel(160, 120), 30, model -> publish(model));
+ * fire.start();
+ * </pre>
+ * @author cpdea
+ */
+public class FireWorkerPool implements AutoCloseable {
+    public static final String THREADS_PROPERTY = "fireeffect.workers";   // worker threads, default the cores
+    public static final String CPU_CAP_PROPERTY = "fireeffect.cpuCap";    // cores worth of frame work per second
+
+    public enum State {
+        NEW, RUNNING, PAUSED, DISPOSED
+    }
+
+    private final ForkJoinPool workers;
+    private final ScheduledExecutorService clock;
+    private final Set<Instance> instances = ConcurrentHashMap.newKeySet();
+
+    private final long budgetPerSecond;     // nanoseconds of frame work per second
+    private long budget;                    // guarded by this
+    private long lastRefill;
+
+    /**
+     * A pool with the {@value #THREADS_PROPERTY} and {@value #CPU_CAP_PROPERTY} settings.
+     */
+    public FireWorkerPool() {
+        this(Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()),
+                Double.parseDouble(System.getProperty(CPU_CAP_PROPERTY, "0")));
+    }
+
+    /**
+     * @param threads worker threads
+     * @param cpuCap cores worth of frame work per second, 0 or less for no cap beyond the threads
+     */
+    public FireWorkerPool(int threads, double cpuCap) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Worker pool needs at least one thread, got " + threads);
+        }
+        workers = new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("fire-worker-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, true);
+        clock = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fire-clock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        double cores = cpuCap > 0 ? Math.min(cpuCap, threads) : threads;
+        budgetPerSecond = (long) (cores * FramePacer.NANOS_PER_SECOND);
+        budget = budgetPerSecond / 10;
+        lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Add a fire, it does not run until {@link Instance#start()}.
+     * @param framesPerSecond target rate of this fire
+     * @param onFrame called on the worker after every frame, e.g. to publish the frame buffer
+     */
+    public Instance add(FireModel model, double framesPerSecond, Consumer<FireModel> onFrame) {
+        if (workers.isShutdown()) {
+            throw new IllegalStateException("Worker pool is closed");
+        }
+        Instance instance = new Instance(model, framesPerSecond, onFrame);
+        instances.add(instance);
+        return instance;
+    }
+
+    public int getThreads() {
+        return workers.getParallelism();
+    }
+
+    public int getInstanceCount() {
+        return instances.size();
+    }
+
+    /**
+     * Refill the CPU budget for the time passed and take a frame from it when some is left.
+     * The budget holds at most a tenth of a second, a frame may overdraw it.
+     */
+    private synchronized boolean tryAcquire() {
+        long now = System.nanoTime();
+        long refill = (long) ((now - lastRefill) * (budgetPerSecond / (double) FramePacer.NANOS_PER_SECOND));
+        budget = Math.min(budgetPerSecond / 10, budget + refill);
+        lastRefill = now;
+        return budget > 0;
+    }
+
+    private synchronized void charge(long nanos) {
+        budget -= nanos;
+    }
+
+    /**
+     * Dispose every instance and stop the threads.
+     */
+    @Override
+    public void close() {
+        for (Instance instance : instances) {
+            instance.dispose();
+        }
+        clock.shutdownNow();
+        workers.shutdown();
+    }
+
+    /**
+     * One fire on the pool: its model, frame rate and lifecycle.
+     */
+    public final class Instance {
+        private final FireModel model;
+        private final Consumer<FireModel> onFrame;
+        private final AtomicBoolean busy = new AtomicBoolean();
+        private final Runnable release = this::release;
+        private final Runnable frame = this::frame;
+        private volatile State state = State.NEW;
+        private volatile double rate;
+        private ScheduledFuture<?> schedule;
+
+        private volatile long frames, skipped;
+        private long windowStart, windowFrames;     // worker side, under busy
+        private volatile double achievedRate;
+
+        private Instance(FireModel model, double framesPerSecond, Consumer<FireModel> onFrame) {
+            this.model = model;
+            this.onFrame = onFrame;
+            setRate(framesPerSecond);
+        }
+
+        public synchronized void start() {
+            if (state == State.DISPOSED) {
+                throw new IllegalStateException("Fire instance was disposed");
+            }
+            if (state != State.RUNNING) {
+                state = State.RUNNING;
+                schedule();
+            }
+        }
+
+        /**
+         * Stop releasing frames, a frame in progress still finishes.
+         */
+        public synchronized void pause() {
+            if (state == State.RUNNING) {
+                state = State.PAUSED;
+                schedule.cancel(false);
+                schedule = null;
+            }
+        }
+
+        /**
+         * Stop for good and leave the pool. The model is not touched, it belongs to the caller.
+         */
+        public synchronized void dispose() {
+            pause();
+            state = State.DISPOSED;
+            instances.remove(this);
+        }
+
+        public synchronized void setRate(double framesPerSecond) {
+            if (!(framesPerSecond > 0)) {
+                throw new IllegalArgumentException("Frame rate must be positive, got " + framesPerSecond);
+            }
+            rate = framesPerSecond;
+            if (state == State.RUNNING) {
+                schedule.cancel(false);
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            long period = Math.max(1, Math.round(FramePacer.NANOS_PER_SECOND / rate));
+            schedule = clock.scheduleAtFixedRate(release, 0, period, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Clock thread: hand the frame to the workers unless the last one still runs
+         * or the CPU budget is spent.
+         */
+        private void release() {
+            if (state == State.RUNNING && tryAcquire() && busy.compareAndSet(false, true)) {
+                workers.execute(frame);
+            } else {
+                skipped++;
+            }
+        }
+
+        private void frame() {
+            long start = System.nanoTime();
+            try {
+                if (state == State.RUNNING) {
+                    model.genRandomFireRowWidth();
+                    model.copyFireRowBottom();
+                    model.convolution();
+                    if (onFrame != null) {
+                        onFrame.accept(model);
+                    }
+                    countFrame(start);
+                }
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+                pause();
+            } finally {
+                charge(System.nanoTime() - start);
+                busy.set(false);
+            }
+        }
+
+        private void countFrame(long now) {
+            frames++;
+            windowFrames++;
+            long elapsed = now - windowStart;
+            if (elapsed >= FramePacer.NANOS_PER_SECOND) {
+                achievedRate = windowStart == 0 ? 0 : windowFrames * (double) FramePacer.NANOS_PER_SECOND / elapsed;
+                windowStart = now;
+                windowFrames = 0;
+            }
+        }
+
+        public FireModel getModel() {
+            return model;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public double getRate() {
+            return rate;
+        }
+
+        /**
+         * @return frames per second over the last measured window (about a second)
+         */
+        public double getAchievedRate() {
+            return achievedRate;
+        }
+
+        public long getFrames() {
+            return frames;
+        }
+
+        /**
+         * @return frames not run because the previous one was still busy or the CPU cap was hit
+         */
+        public long getSkippedFrames() {
+            return skipped;
+        }
+    }
+}
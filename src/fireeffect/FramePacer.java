@@ -0,0 +1,109 @@
+package fireeffect;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces a simulation loop to a fixed frame rate without drift.
+ *
+ * Frames are due on a fixed grid (start + n * period) measured with System.nanoTime, so the
+ * time a frame takes is subtracted from the wait instead of added to it. When a frame overran
+ * one or more whole periods those frames are skipped and the loop continues on the grid,
+ * it never runs a burst of frames to catch up.
+ * <pre>
+ * FramePacer pacer = new FramePacer(60);
+ * while (running) {
+ *     simulate();
+ *     pacer.awaitNextFrame();
+ * }
+ * </pre>
+ * @author cpdea
+ */
+public class FramePacer {
+    public static final String RATE_PROPERTY = "fireeffect.fps";
+    static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final long periodNanos;
+    private long deadline;          // when the next frame is due, 0 before the first frame
+    private long frames;
+    private volatile long skippedFrames;
+
+    private long windowStart;       // achieved rate is measured over windows of about a second
+    private long windowFrames;
+    private volatile double achievedRate;
+
+    public FramePacer(double framesPerSecond) {
+        if (!(framesPerSecond > 0)) {
+            throw new IllegalArgumentException("Frame rate must be positive, got " + framesPerSecond);
+        }
+        this.periodNanos = Math.max(1, Math.round(NANOS_PER_SECOND / framesPerSecond));
+    }
+
+    /**
+     * @return the {@value #RATE_PROPERTY} frame rate when set, otherwise {@code defaultRate}
+     */
+    public static double rateFromProperties(double defaultRate) {
+        String rate = System.getProperty(RATE_PROPERTY);
+        return rate != null ? Double.parseDouble(rate.trim()) : defaultRate;
+    }
+
+    /**
+     * Park until the next frame is due. The first call returns at once and starts the grid.
+     * @throws InterruptedException when the thread is interrupted while waiting
+     */
+    public void awaitNextFrame() throws InterruptedException {
+        long now = System.nanoTime();
+        if (deadline == 0) {
+            deadline = now;
+            windowStart = now;
+        } else {
+            deadline += periodNanos;
+            long late = now - deadline;
+            if (late >= periodNanos) {
+                // whole periods passed without a frame, drop them instead of catching up
+                long missed = late / periodNanos;
+                deadline += missed * periodNanos;
+                skippedFrames += missed;
+            }
+            while ((now = System.nanoTime()) - deadline < 0) {
+                LockSupport.parkNanos(this, deadline - now);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+        countFrame(now);
+    }
+
+    private void countFrame(long now) {
+        frames++;
+        windowFrames++;
+        long elapsed = now - windowStart;
+        if (elapsed >= NANOS_PER_SECOND) {
+            achievedRate = windowFrames * (double) NANOS_PER_SECOND / elapsed;
+            windowStart = now;
+            windowFrames = 0;
+        }
+    }
+
+    /**
+     * @return frames per second started over the last measured window (about a second)
+     */
+    public double getAchievedRate() {
+        return achievedRate;
+    }
+
+    /**
+     * @return frames dropped so far because the loop fell a whole period or more behind
+     */
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    public double getTargetRate() {
+        return (double) NANOS_PER_SECOND / periodNanos;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+}
@@ -0,0 +1,329 @@
+package fireeffect;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Compact codec for sequences of heat fields (one byte per cell, before the palette), for
+ * storing and streaming fires at a fraction of the size of ARGB frames.
+ *
+ * Every frame is XORed with the previous one, a keyframe with an all-cold field. The result
+ * is written as alternating zero runs and literal runs, so cold rows above the flame and
+ * unchanged cells cost a few bytes per run, whole frames or rows of them one varint.
+ * Keyframes come every {@code keyframeInterval} frames (or on request), so a stream can be
+ * cut or joined there. Decoding XORs the literal runs into the previous frame in place and
+ * skips the zero runs, which reconstructs 1080p frames in a few milliseconds on one core.
+ *
+ * Stream layout: magic, version, width, height, keyframe interval (ints), then per frame a
+ * type byte ({@link #KEYFRAME} or {@link #DELTA}), the payload length (int) and the payload:
+ * varint tokens {@code length << 1 | literal}, each literal token followed by its bytes.
+ * <pre>
+ * try (HeatCodec.Encoder encoder = new HeatCodec.Encoder(out, model.screenWidth, model.screenHeight, 60)) {
+ *     encoder.writeFrame(model);
+ * }
+ * try (HeatCodec.Decoder decoder = new HeatCodec.Decoder(in)) {
+ *     for (byte[] heat; (heat = decoder.readFrame()) != null; ) {
+ *         model.loadHeat(heat);
+ *     }
+ * }
+ * </pre>
+ * @author cpdea
+ */
+public final class HeatCodec {
+    static final int MAGIC = 0x48454154;   // "HEAT"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 20;    // magic, version, width, height, keyframe interval
+    public static final byte KEYFRAME = 0;
+    public static final byte DELTA = 1;
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 60;
+    // zero gaps shorter than this stay inside a literal run, a token would cost more
+    static final int MIN_ZERO_RUN = 4;
+
+    private HeatCodec() {
+    }
+
+    /**
+     * @return the largest payload of a width * height frame
+     */
+    static int maxPayload(int cells) {
+        // at worst every literal run of one byte is followed by a minimal zero run
+        return cells + (cells / (MIN_ZERO_RUN + 1) + 1) * 2 * 5;
+    }
+
+    /**
+     * Encode {@code current} XOR {@code previous} (null for a keyframe) into {@code payload}.
+     * @return payload length
+     */
+    static int encode(byte[] current, byte[] previous, int cells, byte[] payload) {
+        int p = 0;
+        int index = 0;
+        while (index < cells) {
+            // zero run: cells unchanged since the previous frame, or cold in a keyframe
+            int start = index;
+            if (previous == null) {
+                while (index < cells && current[index] == 0) {
+                    index++;
+                }
+            } else {
+                while (index < cells && current[index] == previous[index]) {
+                    index++;
+                }
+            }
+            if (index > start) {
+                p = writeVarint(payload, p, (long) (index - start) << 1);
+            }
+            if (index == cells) {
+                break;
+            }
+            // literal run up to the next zero run worth a token
+            start = index;
+            int zeros = 0;
+            while (index < cells && zeros < MIN_ZERO_RUN) {
+                boolean same = previous == null ? current[index] == 0 : current[index] == previous[index];
+                zeros = same ? zeros + 1 : 0;
+                index++;
+            }
+            int end = zeros == MIN_ZERO_RUN ? index - zeros : index;
+            index = end;
+            int length = end - start;
+            p = writeVarint(payload, p, (long) length << 1 | 1);
+            if (previous == null) {
+                System.arraycopy(current, start, payload, p, length);
+            } else {
+                for (int i = 0; i < length; i++) {
+                    payload[p + i] = (byte) (current[start + i] ^ previous[start + i]);
+                }
+            }
+            p += length;
+        }
+        return p;
+    }
+
+    /**
+     * XOR the runs of {@code payload} into {@code heat}, which holds the previous frame
+     * (or zeros for a keyframe).
+     */
+    static void decode(byte[] payload, int payloadLength, byte[] heat, int cells) throws IOException {
+        int p = 0;
+        int index = 0;
+        while (p < payloadLength) {
+            long token = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = payload[p++];
+                token |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0 && p < payloadLength);
+            long run = token >>> 1;
+            if (run > cells - index) {
+                throw new IOException("Corrupt heat frame, run past the end of the field");
+            }
+            int length = (int) run;
+            if ((token & 1) != 0) {
+                if (length > payloadLength - p) {
+                    throw new IOException("Corrupt heat frame, literal past the end of the payload");
+                }
+                for (int i = 0; i < length; i++) {
+                    heat[index + i] ^= payload[p + i];
+                }
+                p += length;
+            }
+            index += length;
+        }
+        if (index != cells) {
+            throw new IOException("Corrupt heat frame, covers " + index + " of " + cells + " cells");
+        }
+    }
+
+    private static int writeVarint(byte[] target, int p, long value) {
+        while ((value & ~0x7FL) != 0) {
+            target[p++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        target[p++] = (byte) value;
+        return p;
+    }
+
+    /**
+     * Writes heat frames to a stream, a keyframe first and then every keyframeInterval frames.
+     */
+    public static class Encoder implements Closeable {
+        public final int width, height;
+        private final int keyframeInterval;
+        private final DataOutputStream out;
+        private final byte[] current, previous, payload;
+        private long frames;
+        private long bytesWritten;
+        private boolean keyframeRequested = true;
+
+        /**
+         * @param keyframeInterval frames between keyframes, 0 or less for only the first one
+         */
+        public Encoder(OutputStream out, int width, int height, int keyframeInterval) throws IOException {
+            this.width = width;
+            this.height = height;
+            this.keyframeInterval = keyframeInterval;
+            this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+            current = new byte[width * height];
+            previous = new byte[width * height];
+            payload = new byte[maxPayload(width * height)];
+            this.out.writeInt(MAGIC);
+            this.out.writeInt(VERSION);
+            this.out.writeInt(width);
+            this.out.writeInt(height);
+            this.out.writeInt(keyframeInterval);
+            bytesWritten = HEADER_BYTES;
+        }
+
+        /**
+         * Encode the model's current heat field.
+         */
+        public void writeFrame(FireModel model) throws IOException {
+            if (model.screenWidth != width || model.screenHeight != height) {
+                throw new IllegalArgumentException("Model is " + model.screenWidth + "x" + model.screenHeight
+                        + ", the stream " + width + "x" + height);
+            }
+            model.copyHeat(current);
+            write(current);
+        }
+
+        /**
+         * Encode a heat field of width * height cells.
+         */
+        public void writeFrame(byte[] heat) throws IOException {
+            System.arraycopy(heat, 0, current, 0, width * height);
+            write(current);
+        }
+
+        private void write(byte[] heat) throws IOException {
+            boolean keyframe = keyframeRequested || (keyframeInterval > 0 && frames % keyframeInterval == 0);
+            int length = encode(heat, keyframe ? null : previous, width * height, payload);
+            out.writeByte(keyframe ? KEYFRAME : DELTA);
+            out.writeInt(length);
+            out.write(payload, 0, length);
+            System.arraycopy(heat, 0, previous, 0, width * height);
+            keyframeRequested = false;
+            frames++;
+            bytesWritten += 5 + length;
+        }
+
+        /**
+         * Make the next frame a keyframe, e.g. when a client joins a live stream.
+         */
+        public void requestKeyframe() {
+            keyframeRequested = true;
+        }
+
+        public long getFrames() {
+            return frames;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the frames of an {@link Encoder} stream back.
+     */
+    public static class Decoder implements Closeable {
+        public final int width, height, keyframeInterval;
+        private final DataInputStream in;
+        private final byte[] heat;
+        private byte[] payload = new byte[0];
+        private boolean started;
+        private long frames;
+
+        public Decoder(InputStream in) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+            if (this.in.readInt() != MAGIC) {
+                throw new IOException("Not a heat stream");
+            }
+            int version = this.in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported heat stream version " + version);
+            }
+            width = this.in.readInt();
+            height = this.in.readInt();
+            keyframeInterval = this.in.readInt();
+            if (width < 1 || height < 1 || (long) width * height > Integer.MAX_VALUE) {
+                throw new IOException("Bad heat stream size " + width + "x" + height);
+            }
+            heat = new byte[width * height];
+        }
+
+        /**
+         * @return the next frame, valid until the following call, or null at the end of the stream
+         */
+        public byte[] readFrame() throws IOException {
+            int type = in.read();
+            if (type < 0) {
+                return null;
+            }
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                throw new IOException("Truncated heat frame", e);
+            }
+            if (length < 0 || length > maxPayload(heat.length)) {
+                throw new IOException("Bad heat frame length " + length);
+            }
+            if (payload.length < length) {
+                payload = new byte[length];
+            }
+            in.readFully(payload, 0, length);
+            if (type == KEYFRAME) {
+                Arrays.fill(heat, (byte) 0);
+                started = true;
+            } else if (type != DELTA) {
+                throw new IOException("Unknown heat frame type " + type);
+            } else if (!started) {
+                throw new IOException("Heat stream does not start with a keyframe");
+            }
+            decode(payload, length, heat, heat.length);
+            frames++;
+            return heat;
+        }
+
+        /**
+         * Copy the next frame into {@code target}.
+         * @return false at the end of the stream
+         */
+        public boolean readFrame(byte[] target) throws IOException {
+            byte[] frame = readFrame();
+            if (frame == null) {
+                return false;
+            }
+            System.arraycopy(frame, 0, target, 0, frame.length);
+            return true;
+        }
+
+        public long getFrames() {
+            return frames;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
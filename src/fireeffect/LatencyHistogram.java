@@ -0,0 +1,141 @@
+package fireeffect;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in nanoseconds, for percentiles of frame stage times.
+ *
+ * Values are counted in log-linear buckets: 16 buckets per power of two, so a percentile is
+ * reported at most 1/16 above the real value, from nanoseconds up to hours. Recording is an
+ * increment of one bucket, a count and a compare for the max, so any number of threads can
+ * record while another one reads a summary. A summary taken while values are recorded may miss
+ * the newest of them.
+ * @author cpdea
+ */
+public class LatencyHistogram {
+    static final int SUB_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+    static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) Math.max(0, nanos);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return the largest value counted in {@code bucket}
+     */
+    static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    public void record(long nanos) {
+        counts.incrementAndGet(bucket(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        long current;
+        while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+            // another thread raised the max, check against its value
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @param percentile 0..100
+     * @return nanoseconds at or below which {@code percentile} percent of the values are,
+     * 0 when nothing was recorded
+     */
+    public long percentile(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(n * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public Summary summary() {
+        long n = count.get();
+        return new Summary(n, percentile(50), percentile(99), max.get(), n == 0 ? 0 : total.get() / n);
+    }
+
+    /**
+     * Start counting from zero. Values recorded during the reset may be lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Percentiles of a histogram at one point in time, in microseconds. The getters make it
+     * show up as composite data in JMX consoles.
+     */
+    public static final class Summary {
+        private final long count;
+        private final long p50, p99, max, mean;    // nanoseconds
+
+        Summary(long count, long p50, long p99, long max, long mean) {
+            this.count = count;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.max = max;
+            this.mean = mean;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getP50Micros() {
+            return TimeUnit.NANOSECONDS.toMicros(p50);
+        }
+
+        public long getP99Micros() {
+            return TimeUnit.NANOSECONDS.toMicros(p99);
+        }
+
+        public long getMaxMicros() {
+            return TimeUnit.NANOSECONDS.toMicros(max);
+        }
+
+        public long getMeanMicros() {
+            return TimeUnit.NANOSECONDS.toMicros(mean);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("p50 %.2fms p99 %.2fms max %.2fms (n=%d)", p50 / 1e6, p99 / 1e6, max / 1e6, count);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package fireeffect;
+
+import java.util.SplittableRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * Random heat used by {@link FireModel#genRandomFireRowWidth()} to seed the flames.
+ *
+ * A noise source belongs to one thread; use {@link #split()} to hand an independent generator
+ * to another thread instead of sharing one. Sources built from the same seed produce the same
+ * sequence, so a seeded run renders the same fire every time.
+ * The source is picked with the {@code fireeffect.noise} system property and seeded with
+ * {@code fireeffect.seed}, e.g. {@code -Dfireeffect.noise=table -Dfireeffect.seed=42}.
+ * @author cpdea
+ */
+public interface NoiseSource {
+    String NOISE_PROPERTY = "fireeffect.noise";
+    String SEED_PROPERTY = "fireeffect.seed";
+
+    /**
+     * Fill {@code heats} with values in 0..255, uniformly distributed.
+     */
+    void fill(int[] heats);
+
+    /**
+     * @return a new generator, independent of this one, for use on another thread
+     */
+    NoiseSource split();
+
+    /**
+     * Look up a noise source by name. Unknown or missing names fall back to xorshift.
+     * @param name xorshift, splittable or table
+     */
+    static NoiseSource named(String name, long seed) {
+        if (name == null) {
+            return new XorShiftNoise(seed);
+        }
+        switch (name.trim().toLowerCase()) {
+            case "xorshift":
+                return new XorShiftNoise(seed);
+            case "splittable":
+                return new SplittableNoise(seed);
+            case "table":
+                return new TableNoise(seed);
+            default:
+                System.out.println("Unknown noise source '" + name + "', using xorshift.");
+                return new XorShiftNoise(seed);
+        }
+    }
+
+    /**
+     * The source named by {@value #NOISE_PROPERTY}, seeded with {@value #SEED_PROPERTY}
+     * when it is set, otherwise with a fresh random seed.
+     */
+    static NoiseSource fromProperties() {
+        Long seed = Long.getLong(SEED_PROPERTY);
+        return named(System.getProperty(NOISE_PROPERTY), seed != null ? seed : new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Eight heat values per 64 bit draw, one from each byte.
+     */
+    static void fillFromLongs(int[] heats, LongSupplier next) {
+        int x = 0;
+        for (int end = heats.length & ~7; x < end; x += 8) {
+            long bits = next.getAsLong();
+            heats[x] = (int) bits & 0xFF;
+            heats[x + 1] = (int) (bits >>> 8) & 0xFF;
+            heats[x + 2] = (int) (bits >>> 16) & 0xFF;
+            heats[x + 3] = (int) (bits >>> 24) & 0xFF;
+            heats[x + 4] = (int) (bits >>> 32) & 0xFF;
+            heats[x + 5] = (int) (bits >>> 40) & 0xFF;
+            heats[x + 6] = (int) (bits >>> 48) & 0xFF;
+            heats[x + 7] = (int) (bits >>> 56);
+        }
+        if (x < heats.length) {
+            long bits = next.getAsLong();
+            for (; x < heats.length; x++, bits >>>= 8) {
+                heats[x] = (int) bits & 0xFF;
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package fireeffect;
+
+import java.nio.ByteOrder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compiled 256 entry lookup tables, one per (classic, shift1, shift2, shift3) setting and
+ * output {@link FirePixelFormat}.
+ *
+ * The "Waves of Fire" colors are the base palette shifted and ORed up to three times. That only
+ * depends on the heat and the shifts, so each setting is compiled once and the colorizing loops
+ * do a single table load per pixel. The least recently used tables are evicted.
+ * @author cpdea
+ */
+public class PaletteCache {
+    public static final int DEFAULT_CAPACITY = 16;
+
+    private final int capacity;
+    private final Map<Long, int[]> tables;
+    private int[] base;
+
+    public PaletteCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PaletteCache(int capacity) {
+        this.capacity = capacity;
+        this.tables = new LinkedHashMap<Long, int[]>(capacity * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+                return size() > PaletteCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * @param base palette the tables are compiled from, tables of a previous base are dropped
+     * @param order byte order of the pixel target, see {@link FirePixelFormat#convert}
+     * @return the table for the setting; shared, must not be modified
+     */
+    public synchronized int[] lookup(int[] base, boolean classic, int shift1, int shift2, int shift3,
+                                     FirePixelFormat format, ByteOrder order) {
+        if (base != this.base) {
+            tables.clear();
+            this.base = base;
+        }
+        boolean swapped = format == FirePixelFormat.BYTE_BGRA_PRE && order == ByteOrder.BIG_ENDIAN;
+        long setting = (long) format.ordinal() << 56 | (swapped ? 1L << 55 : 0L);
+        Long key = classic ? Long.valueOf(setting | 1L << 48)
+                : Long.valueOf(setting | (shift1 & 0xFFFFL) << 32 | (shift2 & 0xFFFFL) << 16 | (shift3 & 0xFFFFL));
+        int[] table = tables.get(key);
+        if (table == null) {
+            table = compile(base, classic, shift1, shift2, shift3);
+            for (int heat = 0; heat < table.length; heat++) {
+                table[heat] = format.convert(table[heat], order);
+            }
+            tables.put(key, table);
+        }
+        return table;
+    }
+
+    /**
+     * Resolve every heat to its non premultiplied ARGB color, a shift of -1 turns that wave off.
+     */
+    static int[] compile(int[] base, boolean classic, int shift1, int shift2, int shift3) {
+        int[] table = new int[base.length];
+        for (int heat = 0; heat < base.length; heat++) {
+            if (classic) {
+                table[heat] = base[heat];
+                continue;
+            }
+            int value = 0;
+            if (shift1 > -1)
+                value |= base[heat] << shift1;
+            if (shift2 > -1)
+                value |= base[heat] << shift2;
+            if (shift3 > -1)
+                value |= base[heat] << shift3;
+            table[heat] = value;
+        }
+        return table;
+    }
+}
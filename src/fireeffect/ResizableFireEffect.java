@@ -12,7 +12,6 @@ import javafx.scene.control.Label;
 import javafx.scene.control.RadioButton;
 import javafx.scene.control.ToggleGroup;
 import javafx.scene.image.PixelWriter;
-import javafx.scene.image.WritableImage;
 import javafx.scene.image.WritablePixelFormat;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
@@ -20,6 +19,7 @@ import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 
+import java.io.IOException;
 import java.nio.IntBuffer;
 import java.util.List;
 import java.util.Queue;
@@ -40,13 +40,29 @@ public class ResizableFireEffect extends Application {
 
     int shift1, shift2, shift3;  //cheesy way to use bit shifting to make waves
 
-    final long DEFAULT_WORKER_SLEEP = 25; // milliseconds
+    FirePixelFormat surfaceFormat = FirePixelFormat.INT_ARGB;  // the canvas' native layout
+
+    final double DEFAULT_FRAME_RATE = 40; // simulated frames per second, -Dfireeffect.fps overrides it
 
     Canvas canvas;      // main render surface displayed to the user
 
     // create a worker queue, basically a consumer producer pattern
     Queue<ScreenDimension> workerQueue = new ConcurrentLinkedQueue<>();
-    Queue<WritableImage> renderQueue = new ConcurrentLinkedQueue<>();
+
+    // frames handed from the worker to the animation timer, the newest complete frame wins
+    TripleBuffer<FireFrame> frames = new TripleBuffer<>(FireFrame::new);
+
+    // with -Dfireeffect.loop=<frames> the fire is simulated once and replayed from a loop cache
+    final int loopFrames = Integer.getInteger(FireLoopCache.LOOP_PROPERTY, 0);
+    FireLoopCache loopCache;
+    long loopIndex;
+
+    // large windows simulate a smaller field (see FireUpscaler.pickScale) that is upscaled per frame
+    int displayWidth = 800, displayHeight = 600;
+    FireUpscaler upscaler;
+
+    // frame timings, in JMX as fireeffect:type=FireMetrics and printed every few seconds
+    FireMetrics metrics = new FireMetrics();
 
     private FireModel getFireModel() {
         if (fireModel==null) {
@@ -126,16 +142,41 @@ public class ResizableFireEffect extends Application {
         // check if a new screen dimension is available
         ScreenDimension newScreenDimension = workerQueue.poll();
 
-        // If not equal reallocate() new one. Also make sure screen dimensions are at least 4x4.
+        // If not equal resize the model in place. Also make sure screen dimensions are at least 4x4.
         if (newScreenDimension != null &&
-                !newScreenDimension.equals(curfireModel.screenWidth, curfireModel.screenHeight) &&
+                !newScreenDimension.equals(displayWidth, displayHeight) &&
                 newScreenDimension.w > 4 && newScreenDimension.h > 4) {
 
-            curfireModel.cleanup();
             workerQueue.clear();
-            FireModel fireModel = new FireModel(newScreenDimension.w, newScreenDimension.h);
-            setFireModel(fireModel);
+            int w = newScreenDimension.w;
+            int h = newScreenDimension.h;
+            // loops are cached at the window size
+            int scale = loopFrames > 0 ? 1 : FireUpscaler.pickScale(w, h);
+            // runs on the worker between frames, the FX thread only reads published frames,
+            // which carry their own size; the model lets go of the last one it colorized
+            curfireModel.resize(w / scale, h / scale);
+            upscaler = scale > 1 ? new FireUpscaler(w / scale, h / scale, w, h, FireUpscaler.filterFromProperties()) : null;
+            displayWidth = w;
+            displayHeight = h;
+            System.out.println(String.format("Simulating %s by %s at 1/%s scale", w / scale, h / scale, scale));
+        }
+    }
+
+    /**
+     * Colorize the next frame of the loop matching the model's size into the frame,
+     * simulating (or loading) a new loop whenever the size changes.
+     */
+    private void replayLoop(FireModel fireModel, FireFrame frame) throws IOException {
+        if (loopCache == null || !loopCache.matches(fireModel)) {
+            if (loopCache != null) {
+                loopCache.close();
+            }
+            loopCache = FireLoopCache.open(FireLoopCache.defaultDirectory(), fireModel, loopFrames, loopFrames / 4);
+            System.out.println("Replaying fire loop " + loopCache.getFile());
         }
+        fireModel.setFrameBuffer(frame.pixels);
+        loopCache.nextFrame(fireModel);
+        frame.frameNumber = loopIndex++;
     }
 
     /**
@@ -145,45 +186,67 @@ public class ResizableFireEffect extends Application {
     private void initCanvas(Stage primaryStage, int heightTop) {
         reallocateIfDiff();
 
+        // colorize in the canvas' native layout, so setPixels does not convert every pixel
+        WritablePixelFormat<IntBuffer> pixelFormat =
+                FireImageWriter.negotiate(getFireModel(), canvas.getGraphicsContext2D().getPixelWriter());
+        surfaceFormat = getFireModel().pixelFormat;
+
+        FramePacer pacer = new FramePacer(FramePacer.rateFromProperties(DEFAULT_FRAME_RATE));
+        metrics.register("ResizableFireEffect");
+        long period = FireMetrics.periodFromProperties();
+        if (period > 0) {
+            metrics.startReporting(period, snapshot -> System.out.println(snapshot + String.format(", %.1f fps, %d skipped",
+                    pacer.getAchievedRate(), pacer.getSkippedFrames())));
+        }
+
         // Worker thread task to perform convolution (using CPU one thread)
         Task fireTask = new Task() {
             @Override
             protected Void call() throws Exception {
 
-                long startTime = 0;
-                long markTime = 0;
-                long elapseTime = 0;
-
-                // argb writable surface as opposed to a rgba.
-                WritablePixelFormat<IntBuffer> pixelFormat = WritablePixelFormat.getIntArgbInstance();
+                metrics.registerWorker(Thread.currentThread());
 
                 while(!this.isCancelled() && !this.isDone()) {
-                    // Start stop watch
-                    startTime = System.currentTimeMillis();
                     reallocateIfDiff();
                     FireModel fireModel = getFireModel();
+                    // Start stop watch, the frame's age is measured from here
+                    long seedTime = System.nanoTime();
                     // Randomize the bottom row of the fire buffer
                     fireModel.genRandomFireRowWidth();
                     fireModel.copyFireRowBottom();
 
-                    markTime = System.currentTimeMillis();
-
                     fireModel.classic = classic;
                     fireModel.shift1 = shift1;
                     fireModel.shift2 = shift2;
                     fireModel.shift3 = shift3;
-
-                    fireModel.convolution();
+                    fireModel.pixelFormat = surfaceFormat;
+
+                    // colorize into the back frame, the animation thread only ever reads published frames
+                    FireFrame frame = frames.back();
+                    frame.ensureSize(displayWidth, displayHeight);
+                    frame.seedTime = seedTime;
+                    if (loopFrames > 0) {
+                        replayLoop(fireModel, frame);
+                    } else if (upscaler != null) {
+                        // simulate at the reduced size, then colorize up to the window size;
+                        // the model colorizes into a frame of its own, not one already published
+                        fireModel.detachFrameBuffer();
+                        fireModel.convolution();
+                        upscaler.upscale(fireModel, frame.pixels);
+                        frame.frameNumber = fireModel.frameCount;
+                    } else {
+                        fireModel.setFrameBuffer(frame.pixels);
+                        fireModel.convolution();
+                        frame.frameNumber = fireModel.frameCount;
+                    }
 
                     // let Animation thread draw
-                    renderQueue.add(fireModel.copyWritable(pixelFormat));
-
-                    elapseTime = System.currentTimeMillis() - markTime;
-                    System.out.println("Convolution takes : " + elapseTime + "ms");
-                    elapseTime = System.currentTimeMillis() - startTime;
-                    System.out.println("Convolution + setPixels takes : " + elapseTime + "ms");
+                    long dropped = frames.getDropped();
+                    frames.publish();
+                    metrics.recordSimulation(System.nanoTime() - seedTime);
+                    metrics.frameDropped(frames.getDropped() - dropped);
 
-                    Thread.sleep(DEFAULT_WORKER_SLEEP);
+                    pacer.awaitNextFrame();
                 }
                 return null;
             }
@@ -207,31 +270,34 @@ public class ResizableFireEffect extends Application {
             long lastTimerCall = 0;
             final long NANOS_PER_MILLI = 1000000; //nanoseconds in a millisecond
             final long ANIMATION_DELAY = 16 * NANOS_PER_MILLI;
-            double startTime;
-            double elapseTime;
 
             @Override
             public void handle(long now) {
                 if(now > lastTimerCall + ANIMATION_DELAY) {
                     lastTimerCall = now;    //update for the next animation
-                    startTime = System.nanoTime();
-                    System.out.println("Num items to render: " + renderQueue.size());
+                    long startTime = System.nanoTime();
 
-                    // grab work to do
-                    WritableImage fireImageFrame = renderQueue.poll();
+                    // grab the newest complete frame
+                    FireFrame fireFrame = frames.latest();
 
                     // if there is work to do copy to canvas pixel writer.
-                    if (fireImageFrame != null) {
-                        canvas.setWidth(fireImageFrame.getWidth());
-                        canvas.setHeight(fireImageFrame.getHeight());
+                    if (fireFrame != null) {
+                        canvas.setWidth(fireFrame.width);
+                        canvas.setHeight(fireFrame.height);
                         PixelWriter pw = canvas.getGraphicsContext2D().getPixelWriter();
-                        pw.setPixels(0, 0, (int) fireImageFrame.getWidth(), (int) fireImageFrame.getHeight(), fireImageFrame.getPixelReader(), 0, 0);
+                        FireEvents.Span present = FireEvents.begin(FireEvents.Stage.PRESENT);
+                        long uploadTime = System.nanoTime();
+                        pw.setPixels(0, 0, fireFrame.width, fireFrame.height, pixelFormat, fireFrame.pixels, 0, fireFrame.width);
+                        metrics.recordUpload(System.nanoTime() - uploadTime);
+                        present.finish(fireFrame.frameNumber, fireFrame.width, fireFrame.height,
+                                pixelFormat.getType(), (long) fireFrame.width * fireFrame.height * 4);
+                        metrics.recordFrameAge(fireFrame.seedTime);
                     } else {
-                        System.out.println("No work to draw");
+                        // no new frame, the canvas shows the previous one again
+                        metrics.frameDuplicated();
                         return;
                     }
-                    elapseTime = (System.nanoTime() - startTime)/1e6;
-                    System.out.println("UI Render thread takes : " + elapseTime + "ms");
+                    metrics.recordPresent(System.nanoTime() - startTime);
                 }
             }
         };
@@ -241,15 +307,10 @@ public class ResizableFireEffect extends Application {
         // Debounce the change of width and height of the window resizing.
         DebounceDispatcher resizeListener = new DebounceDispatcher(500)
                 .onAction(() -> {
-                    // This action is run on the JavaFX ui thread.
-                    System.out.println(Thread.currentThread().getName() + " reallocate() called.");
-
+                    // This action is run on the JavaFX ui thread, the worker resizes the model.
                     int w = (int) Math.ceil(primaryStage.getScene().getWidth());
                     int h = (int) Math.ceil(primaryStage.getScene().getHeight() - heightTop);
                     workerQueue.add(new ScreenDimension(w,h));
-
-                    System.out.println(workerQueue.size());
-                    System.out.println(String.format("Reallocate arrays [%s by %s]", w, h));
                 });
 
         // Add debounce dispatcher to listen for width and hight changes.
@@ -0,0 +1,79 @@
+package fireeffect;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Debouncer} on a scheduled executor, for coalescing bursts off the FX thread, e.g.
+ * reconfiguring the simulation while settings change. Events may come from any thread, the
+ * action runs on the executor.
+ * @author cpdea
+ */
+public class ScheduledDebouncer extends Debouncer {
+    private static ScheduledExecutorService sharedScheduler;
+
+    private final ScheduledExecutorService scheduler;
+    private final Runnable expire = this::timerExpired;
+    private ScheduledFuture<?> timer;
+
+    /**
+     * Debounce on a daemon thread shared by all debouncers without an executor of their own.
+     */
+    public ScheduledDebouncer() {
+        this(sharedScheduler());
+    }
+
+    public ScheduledDebouncer(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public ScheduledDebouncer(Runnable action, long delay) {
+        this();
+        setAction(action);
+        setDelay(delay);
+    }
+
+    private static synchronized ScheduledExecutorService sharedScheduler() {
+        if (sharedScheduler == null) {
+            sharedScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "fire-debounce");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return sharedScheduler;
+    }
+
+    @Override
+    public ScheduledDebouncer onAction(Runnable action) {
+        super.onAction(action);
+        return this;
+    }
+
+    @Override
+    public ScheduledDebouncer delayMillis(long delay) {
+        super.delayMillis(delay);
+        return this;
+    }
+
+    @Override
+    public ScheduledDebouncer mode(Mode mode) {
+        super.mode(mode);
+        return this;
+    }
+
+    @Override
+    protected void arm(long nanos) {
+        timer = scheduler.schedule(expire, nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    protected void disarm() {
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package fireeffect;
+
+import java.util.SplittableRandom;
+
+/**
+ * {@link NoiseSource} over {@link SplittableRandom}, eight heat values per nextLong().
+ * @author cpdea
+ */
+public class SplittableNoise implements NoiseSource {
+    private final SplittableRandom random;
+
+    public SplittableNoise(long seed) {
+        this(new SplittableRandom(seed));
+    }
+
+    private SplittableNoise(SplittableRandom random) {
+        this.random = random;
+    }
+
+    @Override
+    public void fill(int[] heats) {
+        NoiseSource.fillFromLongs(heats, random::nextLong);
+    }
+
+    @Override
+    public NoiseSource split() {
+        return new SplittableNoise(random.split());
+    }
+}
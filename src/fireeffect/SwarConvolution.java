@@ -0,0 +1,164 @@
+package fireeffect;
+
+/**
+ * SWAR (SIMD within a register) convolution engine that runs on any JDK.
+ *
+ * Heat never exceeds 255, so the engine keeps a packed copy of the field with eight cells
+ * per long (cell x in byte x % 8 of word x / 8). Each word is split into its even and odd
+ * bytes as four 16 bit lanes, so the sum of the four taps (at most 1020) can not carry into
+ * the next lane. The decay (sum * 128) / 513 is done lane-wise without a multiply:
+ * with q = sum / 4 and r = sum % 4 the result is q - 1 when (r == 0 and q > 0) or
+ * (r == 1 and q > 128), otherwise q.
+ *
+ * The wrap-around columns are computed with the scalar formula. The packed field is the
+ * working copy; every finished row is written back to the byte field and colorized, and the
+ * whole field is packed again whenever the model was advanced by another engine, resized or
+ * its heat was set directly ({@code setHeat}, {@code loadHeat}).
+ * @author cpdea
+ */
+public class SwarConvolution implements ConvolutionEngine {
+    private static final long EVEN_BYTES = 0x00FF00FF00FF00FFL;
+    private static final long LOW_BITS = 0x0003000300030003L;
+    private static final long ONES = 0x0001000100010001L;
+    private static final long NONZERO_BIAS = 0x7FFF7FFF7FFF7FFFL;
+    private static final long ABOVE_128_BIAS = 0x007F007F007F007FL;
+
+    private long[] packed = new long[0];
+    private int wordsPerRow;
+    private FireModel syncedModel;
+    private byte[] syncedFire;
+    private int syncedWidth, syncedHeight;
+    private long expectedFrame = -1;
+    private int syncedModCount;
+
+    @Override
+    public void convolve(FireModel model) {
+        int w = model.screenWidth;
+        int h = model.screenHeight;
+        byte[] fire = model.fire;
+        if (model != syncedModel || fire != syncedFire || model.frameCount != expectedFrame
+                || model.heatModCount != syncedModCount || w != syncedWidth || h != syncedHeight) {
+            packAll(model);
+        } else {
+            // the seed row was refreshed by copyFireRowBottom()
+            packRow(fire, w, h - 1);
+        }
+
+        // the rows above firstActiveRow are zero in both copies
+        for (int y = model.firstActiveRow; y < h - 1; y++) {
+            int r1 = y + 1, r2 = y + 2, r3 = y + 3;
+            if (r3 >= h) {
+                r1 %= h;
+                r2 %= h;
+                r3 %= h;
+            }
+            convolveRow(y * wordsPerRow, r1 * wordsPerRow, r2 * wordsPerRow, r3 * wordsPerRow);
+            fixEdges(fire, w, y, r1, r2, r3);
+            unpackRow(fire, w, y);
+            model.colorizeRow(y);
+        }
+        expectedFrame = model.frameCount + 1;
+    }
+
+    private void packAll(FireModel model) {
+        int w = model.screenWidth;
+        int h = model.screenHeight;
+        wordsPerRow = (w + 7) >>> 3;
+        if (packed.length != wordsPerRow * h) {
+            packed = new long[wordsPerRow * h];
+        }
+        for (int y = 0; y < h; y++) {
+            packRow(model.fire, w, y);
+        }
+        syncedModel = model;
+        syncedFire = model.fire;
+        syncedWidth = w;
+        syncedHeight = h;
+        syncedModCount = model.heatModCount;
+    }
+
+    private void packRow(byte[] fire, int w, int y) {
+        int src = y * w;
+        int dst = y * wordsPerRow;
+        for (int x = 0; x < w; x += 8) {
+            long word = 0;
+            for (int lane = 0, n = Math.min(8, w - x); lane < n; lane++) {
+                word |= (long) (fire[src + x + lane] & 0xFF) << (lane << 3);
+            }
+            packed[dst + (x >>> 3)] = word;
+        }
+    }
+
+    private void unpackRow(byte[] fire, int w, int y) {
+        int dst = y * w;
+        int src = y * wordsPerRow;
+        for (int x = 0; x < w; x += 8) {
+            long word = packed[src + (x >>> 3)];
+            for (int lane = 0, n = Math.min(8, w - x); lane < n; lane++) {
+                fire[dst + x + lane] = (byte) (word >>> (lane << 3));
+            }
+        }
+    }
+
+    /**
+     * Packed pass over one row. Lanes next to the row ends read zero instead of the wrapped
+     * column, they are corrected by {@link #fixEdges}.
+     */
+    private void convolveRow(int row, int o1, int o2, int o3) {
+        long[] p = packed;
+        int last = wordsPerRow - 1;
+        for (int j = 0; j <= last; j++) {
+            long center = p[o1 + j];
+            long prev = j > 0 ? p[o1 + j - 1] : 0L;
+            long next = j < last ? p[o1 + j + 1] : 0L;
+            long left = (center << 8) | (prev >>> 56);
+            long right = (center >>> 8) | (next << 56);
+            long below2 = p[o2 + j];
+            long below3 = p[o3 + j];
+
+            long even = (left & EVEN_BYTES) + (below2 & EVEN_BYTES)
+                    + (right & EVEN_BYTES) + (below3 & EVEN_BYTES);
+            long odd = ((left >>> 8) & EVEN_BYTES) + ((below2 >>> 8) & EVEN_BYTES)
+                    + ((right >>> 8) & EVEN_BYTES) + ((below3 >>> 8) & EVEN_BYTES);
+            p[row + j] = decay(even) | (decay(odd) << 8);
+        }
+    }
+
+    /** Lane-wise (sum * 128) / 513 for four 16 bit lanes holding sums up to 1020. */
+    static long decay(long sums) {
+        long q = (sums >>> 2) & EVEN_BYTES;
+        long r = sums & LOW_BITS;
+        long remainderZero = nonZero(r) ^ ONES;
+        long remainderOne = nonZero(r ^ ONES) ^ ONES;
+        long above128 = ((q + ABOVE_128_BIAS) >>> 8) & ONES;
+        // the lanes that borrow are at least 1, so the subtraction never crosses a lane
+        return q - ((remainderZero & nonZero(q)) | (remainderOne & above128));
+    }
+
+    /** 1 in every 16 bit lane that is not zero, lanes must be below 0x8000. */
+    private static long nonZero(long lanes) {
+        return ((lanes + NONZERO_BIAS) >>> 15) & ONES;
+    }
+
+    private void fixEdges(byte[] fire, int w, int y, int r1, int r2, int r3) {
+        int row = y * w;
+        int last = w - 1;
+        int a = r1 * w, b = r2 * w, c = r3 * w;
+        int first = FireKernel.decay((fire[a + last] & 0xFF) + (fire[b] & 0xFF)
+                + (fire[a + (last > 0 ? 1 : 0)] & 0xFF) + (fire[c] & 0xFF));
+        fire[row] = (byte) first;
+        setLane(y, 0, first);
+        if (last > 0) {
+            int end = FireKernel.decay((fire[a + last - 1] & 0xFF) + (fire[b + last] & 0xFF)
+                    + (fire[a] & 0xFF) + (fire[c + last] & 0xFF));
+            fire[row + last] = (byte) end;
+            setLane(y, last, end);
+        }
+    }
+
+    private void setLane(int y, int x, int value) {
+        int index = y * wordsPerRow + (x >>> 3);
+        int shift = (x & 7) << 3;
+        packed[index] = (packed[index] & ~(0xFFL << shift)) | ((long) value << shift);
+    }
+}
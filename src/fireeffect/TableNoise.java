@@ -0,0 +1,49 @@
+package fireeffect;
+
+/**
+ * {@link NoiseSource} that copies rows out of a precomputed table of random heat.
+ * Every fill starts at a random offset in the table, so consecutive rows differ while the
+ * per cell cost is a single array load. The table is shared by split generators.
+ * @author cpdea
+ */
+public class TableNoise implements NoiseSource {
+    static final int TABLE_SIZE = 1 << 16;
+
+    private final int[] table;
+    private final XorShiftNoise offsets;
+
+    public TableNoise(long seed) {
+        this(new XorShiftNoise(seed));
+    }
+
+    private TableNoise(XorShiftNoise random) {
+        this(createTable(random), random);
+    }
+
+    private TableNoise(int[] table, XorShiftNoise offsets) {
+        this.table = table;
+        this.offsets = offsets;
+    }
+
+    private static int[] createTable(XorShiftNoise random) {
+        int[] table = new int[TABLE_SIZE];
+        random.fill(table);
+        return table;
+    }
+
+    @Override
+    public void fill(int[] heats) {
+        int offset = (int) offsets.nextLong() & (TABLE_SIZE - 1);
+        for (int x = 0; x < heats.length; ) {
+            int length = Math.min(heats.length - x, TABLE_SIZE - offset);
+            System.arraycopy(table, offset, heats, x, length);
+            x += length;
+            offset = 0;
+        }
+    }
+
+    @Override
+    public NoiseSource split() {
+        return new TableNoise(table, new XorShiftNoise(offsets.nextLong()));
+    }
+}
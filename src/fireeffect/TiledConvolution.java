@@ -0,0 +1,110 @@
+package fireeffect;
+
+/**
+ * Cache blocked convolution engine for very wide fields (video walls, 8K).
+ *
+ * A row pass over the whole width streams the four rows it reads and the colorized output
+ * row, which no longer fit in L1 once rows are several thousand cells wide. This engine splits
+ * the field into column strips and runs the whole top-down pass for one strip before the next,
+ * so the rows of one strip stay cached while they are read for three consecutive rows.
+ *
+ * Cells next to a strip boundary read the neighbouring strip's column of the previous frame.
+ * The strip to the right has not been processed yet, but the one to the left has, so the last
+ * column of every strip (and column 0, which the last strip wraps to) is copied before the
+ * first strip runs. The wrap-around rows read rows 0 and 1 of the current frame in the same
+ * column only, which their own strip has already computed. The result is bit-identical to
+ * the sequential pass.
+ * @author cpdea
+ */
+public class TiledConvolution implements ConvolutionEngine {
+    /** Strip width in cells: four heat rows and one ARGB row of a strip take 16 KB. */
+    public static final int DEFAULT_STRIP_WIDTH = 2048;
+
+    private final int stripWidth;
+    private byte[][] boundaries = new byte[0][];   // [strip] = previous column of the strip, per row
+    private int boundaryHeight;
+
+    public TiledConvolution() {
+        this(DEFAULT_STRIP_WIDTH);
+    }
+
+    public TiledConvolution(int stripWidth) {
+        if (stripWidth < 1) {
+            throw new IllegalArgumentException("Strip width must be positive, got " + stripWidth);
+        }
+        this.stripWidth = stripWidth;
+    }
+
+    @Override
+    public void convolve(FireModel model) {
+        int w = model.screenWidth;
+        int h = model.screenHeight;
+        int top = model.firstActiveRow;
+        int strips = (w + stripWidth - 1) / stripWidth;
+        if (strips < 2) {
+            model.convolveRows(top, h - 1);
+            return;
+        }
+        ensureBoundaries(strips, h);
+
+        // boundaries[s] holds column s * stripWidth - 1, boundaries[0] column 0 for the last strip
+        byte[] fire = model.fire;
+        for (int s = 0; s < strips; s++) {
+            int column = s == 0 ? 0 : s * stripWidth - 1;
+            byte[] boundary = boundaries[s];
+            for (int y = top; y < h; y++) {
+                boundary[y] = fire[y * w + column];
+            }
+        }
+
+        for (int s = 0; s < strips; s++) {
+            int x0 = s * stripWidth;
+            int x1 = Math.min(w, x0 + stripWidth);
+            convolveStrip(model, x0, x1, s == 0 ? null : boundaries[s], x1 == w ? boundaries[0] : null);
+        }
+    }
+
+    private void ensureBoundaries(int strips, int height) {
+        if (boundaries.length < strips || boundaryHeight < height) {
+            boundaries = new byte[strips][height];
+            boundaryHeight = height;
+        }
+    }
+
+    /**
+     * Top-down pass over columns [x0, x1).
+     * @param left previous frame of column x0 - 1, null when it is still unprocessed
+     * @param right previous frame of column 0, for the last strip, whose right edge wraps
+     */
+    private static void convolveStrip(FireModel model, int x0, int x1, byte[] left, byte[] right) {
+        int w = model.screenWidth;
+        int h = model.screenHeight;
+        byte[] fire = model.fire;
+        int last = x1 - 1;
+        for (int y = model.firstActiveRow; y < h - 1; y++) {
+            int r1 = y + 1, r2 = y + 2, r3 = y + 3;
+            if (r3 >= h) {
+                r1 %= h;
+                r2 %= h;
+                r3 %= h;
+            }
+            int row = y * w, a = r1 * w, b = r2 * w, c = r3 * w;
+            int leftOfFirst = left != null ? left[r1] & 0xFF : fire[a + (x0 == 0 ? w - 1 : x0 - 1)] & 0xFF;
+            int rightOfLast = right != null ? right[r1] & 0xFF : fire[a + x1] & 0xFF;
+
+            // the first column reads its left neighbour from the boundary copy
+            int rightOfFirst = x0 < last ? fire[a + x0 + 1] & 0xFF : rightOfLast;
+            fire[row + x0] = (byte) FireKernel.decay(leftOfFirst + (fire[b + x0] & 0xFF)
+                    + rightOfFirst + (fire[c + x0] & 0xFF));
+            for (int x = x0 + 1; x < last; x++) {
+                fire[row + x] = (byte) FireKernel.decay((fire[a + x - 1] & 0xFF) + (fire[b + x] & 0xFF)
+                        + (fire[a + x + 1] & 0xFF) + (fire[c + x] & 0xFF));
+            }
+            if (last > x0) {
+                fire[row + last] = (byte) FireKernel.decay((fire[a + last - 1] & 0xFF) + (fire[b + last] & 0xFF)
+                        + rightOfLast + (fire[c + last] & 0xFF));
+            }
+            model.colorizeRange(y, x0, x1);
+        }
+    }
+}
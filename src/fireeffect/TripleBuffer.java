@@ -0,0 +1,86 @@
+package fireeffect;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Lock-free triple buffer between one producer (the simulation worker) and one consumer
+ * (the JavaFX animation timer) with "latest frame wins" semantics.
+ *
+ * The producer always owns the back buffer and the consumer the front buffer, the third
+ * one sits in the middle. Publishing swaps back and middle, taking the latest swaps middle
+ * and front, so neither side ever blocks or waits and the consumer never sees a buffer
+ * that is still being written. Frames the consumer was too slow to take are overwritten.
+ * All three buffers are created up front, so steady state allocates nothing.
+ * @author cpdea
+ */
+public class TripleBuffer<T> {
+    private static final int INDEX_MASK = 0b011;
+    private static final int FRESH = 0b100;
+
+    private final Object[] buffers = new Object[3];
+    // index of the middle buffer, plus FRESH when it holds a frame the consumer has not taken
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;   // producer side only
+    private int front = 2;  // consumer side only
+    private volatile long published;
+    private volatile long dropped;
+
+    public TripleBuffer(Supplier<T> factory) {
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = factory.get();
+        }
+    }
+
+    /**
+     * Producer: the buffer to fill next.
+     */
+    @SuppressWarnings("unchecked")
+    public T back() {
+        return (T) buffers[back];
+    }
+
+    /**
+     * Producer: make the back buffer the newest complete frame and continue on another one.
+     */
+    public void publish() {
+        int previous = middle.getAndSet(back | FRESH);
+        back = previous & INDEX_MASK;
+        published++;
+        if ((previous & FRESH) != 0) {
+            // the consumer never saw the frame we just reclaimed
+            dropped++;
+        }
+    }
+
+    /**
+     * Consumer: the newest complete frame, or null when nothing was published since the last call.
+     */
+    @SuppressWarnings("unchecked")
+    public T latest() {
+        if ((middle.get() & FRESH) == 0) {
+            return null;
+        }
+        front = middle.getAndSet(front) & INDEX_MASK;
+        return (T) buffers[front];
+    }
+
+    /**
+     * Consumer: the frame taken by the last successful {@link #latest()}.
+     */
+    @SuppressWarnings("unchecked")
+    public T front() {
+        return (T) buffers[front];
+    }
+
+    public long getPublished() {
+        return published;
+    }
+
+    /**
+     * @return frames that were published but replaced by a newer one before the consumer took them
+     */
+    public long getDropped() {
+        return dropped;
+    }
+}
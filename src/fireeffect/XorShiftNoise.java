@@ -0,0 +1,38 @@
+package fireeffect;
+
+/**
+ * xorshift64* generator, the default {@link NoiseSource}.
+ * Plain long state without atomics, eight heat values per step.
+ * @author cpdea
+ */
+public class XorShiftNoise implements NoiseSource {
+    private long state;
+
+    public XorShiftNoise(long seed) {
+        // splitmix64 the seed so small or similar seeds still start far apart, the state must not be 0
+        long z = seed + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        state = z != 0 ? z : 0x9E3779B97F4A7C15L;
+    }
+
+    public long nextLong() {
+        long x = state;
+        x ^= x >>> 12;
+        x ^= x << 25;
+        x ^= x >>> 27;
+        state = x;
+        return x * 0x2545F4914F6CDD1DL;
+    }
+
+    @Override
+    public void fill(int[] heats) {
+        NoiseSource.fillFromLongs(heats, this::nextLong);
+    }
+
+    @Override
+    public NoiseSource split() {
+        return new XorShiftNoise(nextLong());
+    }
+}
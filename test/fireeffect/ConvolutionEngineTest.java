@@ -0,0 +1,124 @@
+package fireeffect;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Every engine must leave the heat field and the colorized frame exactly as the reference
+ * pass does. Sizes cover widths that are not a multiple of 8 or narrower than one SWAR word,
+ * and heights that put band and strip edges next to the wrap-around rows.
+ * @author cpdea
+ */
+@RunWith(Parameterized.class)
+public class ConvolutionEngineTest {
+    private static final int FRAMES = 80;
+    private static final int[][] SIZES = {
+            {4, 4}, {5, 7}, {7, 19}, {8, 35}, {9, 36}, {13, 67}, {63, 50},
+            {97, 131}, {161, 98}, {257, 83}, {4100, 24}
+    };
+    private static final ForkJoinPool POOL = new ForkJoinPool(3);
+
+    private final Supplier<ConvolutionEngine> engine;
+    private final boolean classic;
+    private final boolean direct;
+
+    public ConvolutionEngineTest(String name, Supplier<ConvolutionEngine> engine, boolean classic, boolean direct) {
+        this.engine = engine;
+        this.classic = classic;
+        this.direct = direct;
+    }
+
+    @Parameterized.Parameters(name = "{0} classic={2} direct={3}")
+    public static Collection<Object[]> parameters() {
+        List<Object[]> engines = new ArrayList<>();
+        for (String name : new String[]{"sequential", "banded", "swar", "tiled", "vector"}) {
+            engines.add(new Object[]{name, (Supplier<ConvolutionEngine>) () -> ConvolutionEngine.named(name)});
+        }
+        // more bands and narrow strips than the defaults give on these sizes
+        engines.add(new Object[]{"banded-6", (Supplier<ConvolutionEngine>) () -> new BandedConvolution(POOL)});
+        engines.add(new Object[]{"tiled-3", (Supplier<ConvolutionEngine>) () -> new TiledConvolution(3)});
+        engines.add(new Object[]{"tiled-8", (Supplier<ConvolutionEngine>) () -> new TiledConvolution(8)});
+
+        List<Object[]> parameters = new ArrayList<>();
+        for (Object[] engine : engines) {
+            for (boolean classic : new boolean[]{true, false}) {
+                for (boolean direct : new boolean[]{false, true}) {
+                    parameters.add(new Object[]{engine[0], engine[1], classic, direct});
+                }
+            }
+        }
+        return parameters;
+    }
+
+    @AfterClass
+    public static void shutdownPool() {
+        POOL.shutdown();
+    }
+
+    private FireModel model(int width, int height, ConvolutionEngine engine) {
+        FireModel model = new FireModel(width, height);
+        model.engine = engine;
+        model.noise = NoiseSource.named("xorshift", 42);
+        model.classic = classic;
+        model.shift1 = 16;
+        model.shift2 = 8;
+        model.shift3 = 0;
+        if (direct) {
+            model.setPixelTarget(ByteBuffer.allocateDirect(width * height * 4)
+                    .order(ByteOrder.nativeOrder()).asIntBuffer());
+        }
+        return model;
+    }
+
+    private static void step(FireModel model) {
+        model.genRandomFireRowWidth();
+        model.copyFireRowBottom();
+        model.convolution();
+    }
+
+    /** The colorized rows, the seed row is never colorized. */
+    private static int[] pixels(FireModel model) {
+        int shown = model.screenWidth * (model.screenHeight - 1);
+        IntBuffer target = model.pixelTarget;
+        if (target == null) {
+            return Arrays.copyOf(model.fireBuf, shown);
+        }
+        int[] pixels = new int[shown];
+        target.duplicate().get(pixels);
+        return pixels;
+    }
+
+    @Test
+    public void matchesTheReferenceEngine() {
+        for (int[] size : SIZES) {
+            int width = size[0], height = size[1], cells = width * height;
+            FireModel reference = model(width, height, ConvolutionEngine.REFERENCE);
+            FireModel tested = model(width, height, engine.get());
+            byte[] expectedHeat = new byte[cells];
+            byte[] heat = new byte[cells];
+            for (int frame = 0; frame < FRAMES; frame++) {
+                step(reference);
+                step(tested);
+                String where = width + "x" + height + " frame " + frame;
+                reference.copyHeat(expectedHeat);
+                tested.copyHeat(heat);
+                assertArrayEquals(where + " heat", expectedHeat, heat);
+                assertArrayEquals(where + " pixels", pixels(reference), pixels(tested));
+            }
+        }
+    }
+}
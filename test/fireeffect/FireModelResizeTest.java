@@ -0,0 +1,85 @@
+package fireeffect;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Resizing in place must keep the fire burning and never write a frame the caller handed
+ * on, e.g. one already published to the FX thread.
+ * @author cpdea
+ */
+public class FireModelResizeTest {
+
+    private static void step(FireModel model) {
+        model.genRandomFireRowWidth();
+        model.copyFireRowBottom();
+        model.convolution();
+    }
+
+    @Test
+    public void resizeDoesNotWriteTheCallersFrame() {
+        FireModel model = new FireModel(160, 120);
+        int[] published = new int[160 * 120];
+        model.setFrameBuffer(published);
+        for (int i = 0; i < 50; i++) {
+            step(model);
+        }
+        int[] shown = published.clone();
+
+        model.resize(200, 100);
+        assertNotSame(published, model.fireBuf);
+        for (int i = 0; i < 10; i++) {
+            step(model);
+        }
+        assertArrayEquals(shown, published);
+
+        model.resize(120, 140);
+        step(model);
+        assertArrayEquals(shown, published);
+    }
+
+    @Test
+    public void detachFrameBufferGoesBackToTheModelsFrame() {
+        FireModel model = new FireModel(64, 48);
+        int[] own = model.fireBuf;
+        model.detachFrameBuffer();
+        assertSame(own, model.fireBuf);
+
+        int[] published = new int[64 * 48];
+        model.setFrameBuffer(published);
+        step(model);
+        int[] shown = published.clone();
+        model.detachFrameBuffer();
+        assertSame(own, model.fireBuf);
+        step(model);
+        assertArrayEquals(shown, published);
+        // the model's own frame shows the newest fire
+        int[] expected = new int[64 * 47];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = model.lut[model.fire[i] & 0xFF];
+        }
+        assertArrayEquals(expected, Arrays.copyOf(model.fireBuf, expected.length));
+    }
+
+    @Test
+    public void resizeKeepsTheFireBurning() {
+        FireModel model = new FireModel(160, 120);
+        for (int i = 0; i < 100; i++) {
+            step(model);
+        }
+        int top = model.getFlameTop();
+        model.resize(320, 200);
+        // rows stay aligned to the seed row, the flame keeps its height
+        assertEquals(top + 80, model.getFlameTop());
+        step(model);
+        assertTrue(model.getFlameTop() < 199);
+        assertTrue(model.fireBuf.length >= 320 * 200);
+    }
+}
@@ -0,0 +1,78 @@
+package fireeffect;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the premultiplied colors against JavaFX's own IntArgb to IntArgbPre conversion,
+ * done by writing non premultiplied pixels into a WritableImage and reading them back
+ * premultiplied.
+ * @author cpdea
+ */
+public class FirePixelFormatTest {
+
+    /**
+     * @return the colors premultiplied by JavaFX
+     */
+    private static int[] toolkitPremultiply(int[] argb) {
+        WritableImage image = new WritableImage(argb.length, 1);
+        image.getPixelWriter().setPixels(0, 0, argb.length, 1, PixelFormat.getIntArgbInstance(), argb, 0, argb.length);
+        int[] pre = new int[argb.length];
+        image.getPixelReader().getPixels(0, 0, argb.length, 1, PixelFormat.getIntArgbPreInstance(), pre, 0, argb.length);
+        return pre;
+    }
+
+    @Test
+    public void premultiplyMatchesJavaFXForEveryAlphaAndChannel() {
+        int[] argb = new int[256];
+        for (int alpha = 0; alpha < 256; alpha++) {
+            // every channel takes every value once per alpha
+            for (int c = 0; c < 256; c++) {
+                argb[c] = alpha << 24 | c << 16 | (255 - c) << 8 | (c * 97 & 0xFF);
+            }
+            int[] expected = toolkitPremultiply(argb);
+            for (int c = 0; c < 256; c++) {
+                assertEquals("alpha " + alpha + ", color " + Integer.toHexString(argb[c]),
+                        Integer.toHexString(expected[c]), Integer.toHexString(FirePixelFormat.premultiply(argb[c])));
+            }
+        }
+    }
+
+    @Test
+    public void convertLeavesIntArgbAlone() {
+        int argb = 0x80FF4020;
+        assertEquals(argb, FirePixelFormat.INT_ARGB.convert(argb, ByteOrder.nativeOrder()));
+        assertEquals(FirePixelFormat.premultiply(argb), FirePixelFormat.INT_ARGB_PRE.convert(argb, ByteOrder.BIG_ENDIAN));
+        assertEquals(FirePixelFormat.premultiply(argb), FirePixelFormat.BYTE_BGRA_PRE.convert(argb, ByteOrder.LITTLE_ENDIAN));
+        assertEquals(Integer.reverseBytes(FirePixelFormat.premultiply(argb)),
+                FirePixelFormat.BYTE_BGRA_PRE.convert(argb, ByteOrder.BIG_ENDIAN));
+    }
+
+    @Test
+    public void premultipliedPaletteTablesMatchJavaFX() {
+        int[] base = FirePalette.generateArgbPalette(256);
+        PaletteCache palettes = new PaletteCache();
+        // the classic palette is opaque, shifted waves move color bits into alpha
+        int[][] settings = {{0, 0, 0}, {16, 8, 1}, {3, -1, 7}, {24, 12, -1}, {1, 2, 3}};
+        for (int i = 0; i < settings.length; i++) {
+            boolean classic = i == 0;
+            int[] s = settings[i];
+            int[] argb = palettes.lookup(base, classic, s[0], s[1], s[2], FirePixelFormat.INT_ARGB, ByteOrder.nativeOrder());
+            int[] expected = toolkitPremultiply(argb);
+            int[] pre = palettes.lookup(base, classic, s[0], s[1], s[2], FirePixelFormat.INT_ARGB_PRE, ByteOrder.nativeOrder());
+            int[] bgraLittle = palettes.lookup(base, classic, s[0], s[1], s[2], FirePixelFormat.BYTE_BGRA_PRE, ByteOrder.LITTLE_ENDIAN);
+            int[] bgraBig = palettes.lookup(base, classic, s[0], s[1], s[2], FirePixelFormat.BYTE_BGRA_PRE, ByteOrder.BIG_ENDIAN);
+            for (int heat = 0; heat < 256; heat++) {
+                String where = "setting " + i + ", heat " + heat;
+                assertEquals(where, expected[heat], pre[heat]);
+                assertEquals(where, expected[heat], bgraLittle[heat]);
+                assertEquals(where, Integer.reverseBytes(expected[heat]), bgraBig[heat]);
+            }
+        }
+    }
+}
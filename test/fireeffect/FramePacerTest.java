@@ -0,0 +1,121 @@
+package fireeffect;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Frame pacing on a fixed grid. Frames can not start before they are due, so lower bounds
+ * are exact; upper bounds leave room for a loaded machine.
+ * @author cpdea
+ */
+public class FramePacerTest {
+    private static final long PERIOD = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void pacesToTheTargetRate() throws InterruptedException {
+        FramePacer pacer = new FramePacer(100);
+        pacer.awaitNextFrame();
+        long start = System.nanoTime();
+        for (int i = 0; i < 50; i++) {
+            pacer.awaitNextFrame();
+        }
+        long elapsed = System.nanoTime() - start;
+        assertTrue("50 frames took " + elapsed / 1e6 + " ms", elapsed >= 49 * PERIOD && elapsed < 80 * PERIOD);
+        assertEquals(51, pacer.getFrames());
+        assertEquals(100, pacer.getTargetRate(), 1e-9);
+    }
+
+    @Test
+    public void subtractsTheWorkFromTheWait() throws InterruptedException {
+        FramePacer pacer = new FramePacer(100);
+        pacer.awaitNextFrame();
+        long start = System.nanoTime();
+        for (int i = 0; i < 50; i++) {
+            // a frame of 6 ms, a fixed sleep after it would take 16 ms per frame
+            work(TimeUnit.MILLISECONDS.toNanos(6));
+            pacer.awaitNextFrame();
+        }
+        long elapsed = System.nanoTime() - start;
+        assertTrue("50 frames took " + elapsed / 1e6 + " ms", elapsed >= 49 * PERIOD && elapsed < 80 * PERIOD);
+        assertEquals(0, pacer.getSkippedFrames());
+    }
+
+    @Test
+    public void skipsMissedFramesInsteadOfCatchingUp() throws InterruptedException {
+        FramePacer pacer = new FramePacer(100);
+        pacer.awaitNextFrame();
+        // a stall of 5.5 periods: the frames due at 1 to 4 periods are gone
+        work(55 * PERIOD / 10);
+        pacer.awaitNextFrame();
+        long resumed = System.nanoTime();
+        pacer.awaitNextFrame();
+        pacer.awaitNextFrame();
+        long elapsed = System.nanoTime() - resumed;
+        long skipped = pacer.getSkippedFrames();
+        assertTrue("skipped " + skipped, skipped >= 4 && skipped <= 6);
+        // back on the grid: the two frames after the stall wait instead of running at once
+        assertTrue("two frames took " + elapsed / 1e6 + " ms", elapsed >= PERIOD);
+    }
+
+    @Test
+    public void measuresTheAchievedRate() throws InterruptedException {
+        FramePacer pacer = new FramePacer(200);
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1200);
+        while (System.nanoTime() < end) {
+            pacer.awaitNextFrame();
+        }
+        assertEquals(200, pacer.getAchievedRate(), 20);
+    }
+
+    @Test(expected = InterruptedException.class)
+    public void interruptStopsTheWait() throws InterruptedException {
+        FramePacer pacer = new FramePacer(1);
+        pacer.awaitNextFrame();
+        Thread.currentThread().interrupt();
+        pacer.awaitNextFrame();
+    }
+
+    @Test
+    public void rateFromProperties() {
+        String previous = System.getProperty(FramePacer.RATE_PROPERTY);
+        try {
+            System.clearProperty(FramePacer.RATE_PROPERTY);
+            assertEquals(40, FramePacer.rateFromProperties(40), 0);
+            System.setProperty(FramePacer.RATE_PROPERTY, " 24 ");
+            assertEquals(24, FramePacer.rateFromProperties(40), 0);
+        } finally {
+            if (previous == null) {
+                System.clearProperty(FramePacer.RATE_PROPERTY);
+            } else {
+                System.setProperty(FramePacer.RATE_PROPERTY, previous);
+            }
+        }
+    }
+
+    @Test
+    public void rejectsRatesThatAreNotPositive() {
+        for (double rate : new double[]{0, -1, Double.NaN}) {
+            try {
+                new FramePacer(rate);
+                fail("accepted " + rate);
+            } catch (IllegalArgumentException expected) {
+                // fine
+            }
+        }
+    }
+
+    /**
+     * Busy wait, so the test measures the pacer and not the sleep granularity.
+     */
+    private static void work(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            // spin
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package fireeffect;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Encode and decode heat field sequences, which must come back bit exact.
+ * @author cpdea
+ */
+public class HeatCodecTest {
+
+    private static void step(FireModel model) {
+        model.genRandomFireRowWidth();
+        model.copyFireRowBottom();
+        model.convolution();
+    }
+
+    @Test
+    public void simulatedFireRoundTrips() throws IOException {
+        int width = 320, height = 200, frames = 100;
+        FireModel model = new FireModel(width, height);
+        byte[][] expected = new byte[frames][width * height];
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (HeatCodec.Encoder encoder = new HeatCodec.Encoder(out, width, height, 30)) {
+            for (int i = 0; i < frames; i++) {
+                step(model);
+                model.copyHeat(expected[i]);
+                encoder.writeFrame(model);
+            }
+            encoder.flush();
+            assertEquals(frames, encoder.getFrames());
+            assertEquals(out.size(), encoder.getBytesWritten());
+        }
+        // cold rows and small changes make it far smaller than the raw heat
+        assertTrue("encoded " + out.size() + " bytes", out.size() < frames * width * height / 2);
+
+        try (HeatCodec.Decoder decoder = new HeatCodec.Decoder(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals(width, decoder.width);
+            assertEquals(height, decoder.height);
+            assertEquals(30, decoder.keyframeInterval);
+            for (int i = 0; i < frames; i++) {
+                assertArrayEquals("frame " + i, expected[i], decoder.readFrame());
+            }
+            assertNull(decoder.readFrame());
+            assertEquals(frames, decoder.getFrames());
+        }
+    }
+
+    @Test
+    public void worstCaseFramesRoundTrip() throws IOException {
+        int width = 61, height = 37, cells = width * height;
+        Random random = new Random(3);
+        byte[][] frames = new byte[8][cells];
+        random.nextBytes(frames[0]);                        // noise, no zero runs at all
+        Arrays.fill(frames[1], (byte) 0x7F);                 // every cell changed
+        System.arraycopy(frames[1], 0, frames[2], 0, cells); // nothing changed
+        for (int i = 0; i < cells; i++) {
+            // changes separated by gaps just below and at the shortest zero run
+            frames[3][i] = (byte) (i % (HeatCodec.MIN_ZERO_RUN + 1) == 0 ? 0 : 0x7F);
+            frames[4][i] = (byte) (i % (HeatCodec.MIN_ZERO_RUN + 2) == 0 ? 1 : 0);
+        }
+        frames[5][cells - 1] = (byte) 0xFF;                  // one change in the last cell
+        frames[6][0] = (byte) 0x80;                          // one change in the first cell
+        // frames[7] all cold
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (HeatCodec.Encoder encoder = new HeatCodec.Encoder(out, width, height, 0)) {
+            for (byte[] frame : frames) {
+                encoder.writeFrame(frame);
+            }
+            encoder.requestKeyframe();
+            encoder.writeFrame(frames[0]);
+        }
+        try (HeatCodec.Decoder decoder = new HeatCodec.Decoder(new ByteArrayInputStream(out.toByteArray()))) {
+            byte[] target = new byte[cells];
+            for (int i = 0; i < frames.length; i++) {
+                assertTrue(decoder.readFrame(target));
+                assertArrayEquals("frame " + i, frames[i], target);
+            }
+            assertArrayEquals(frames[0], decoder.readFrame());
+            assertNull(decoder.readFrame());
+        }
+    }
+
+    @Test
+    public void loadHeatShowsTheDecodedFrame() throws IOException {
+        FireModel live = new FireModel(160, 100);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (HeatCodec.Encoder encoder = new HeatCodec.Encoder(out, 160, 100, HeatCodec.DEFAULT_KEYFRAME_INTERVAL)) {
+            for (int i = 0; i < 40; i++) {
+                step(live);
+                encoder.writeFrame(live);
+            }
+        }
+        FireModel replay = new FireModel(160, 100);
+        try (HeatCodec.Decoder decoder = new HeatCodec.Decoder(new ByteArrayInputStream(out.toByteArray()))) {
+            for (byte[] heat; (heat = decoder.readFrame()) != null; ) {
+                replay.loadHeat(heat);
+            }
+        }
+        // the seed row is never colorized
+        int shown = 160 * 99;
+        assertArrayEquals(Arrays.copyOf(live.fireBuf, shown), Arrays.copyOf(replay.fireBuf, shown));
+    }
+
+    @Test
+    public void rejectsStreamsThatDoNotStartWithAKeyframe() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (HeatCodec.Encoder encoder = new HeatCodec.Encoder(out, 8, 8, 0)) {
+            encoder.writeFrame(new byte[64]);
+        }
+        byte[] stream = out.toByteArray();
+        stream[HeatCodec.HEADER_BYTES] = HeatCodec.DELTA;
+        try (HeatCodec.Decoder decoder = new HeatCodec.Decoder(new ByteArrayInputStream(stream))) {
+            decoder.readFrame();
+            fail("decoded a delta without a keyframe");
+        } catch (IOException expected) {
+            // fine
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedStreams() throws IOException {
+        FireModel model = new FireModel(64, 64);
+        step(model);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (HeatCodec.Encoder encoder = new HeatCodec.Encoder(out, 64, 64, 0)) {
+            encoder.writeFrame(model);
+        }
+        byte[] stream = Arrays.copyOf(out.toByteArray(), out.size() - 3);
+        try (HeatCodec.Decoder decoder = new HeatCodec.Decoder(new ByteArrayInputStream(stream))) {
+            decoder.readFrame();
+            fail("decoded a truncated frame");
+        } catch (IOException expected) {
+            // fine
+        }
+    }
+}
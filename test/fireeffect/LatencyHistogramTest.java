@@ -0,0 +1,128 @@
+package fireeffect;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Percentiles against the exact nearest rank of the recorded values. Buckets are 1/16 of a
+ * power of two wide, so a reported percentile is never below the exact one and at most 1/16 above.
+ * @author cpdea
+ */
+public class LatencyHistogramTest {
+
+    private static void assertPercentile(long[] sorted, LatencyHistogram histogram, double percentile) {
+        long exact = sorted[(int) Math.max(0, Math.ceil(sorted.length * percentile / 100) - 1)];
+        long reported = histogram.percentile(percentile);
+        assertTrue("p" + percentile + " " + reported + " below exact " + exact, reported >= exact);
+        assertTrue("p" + percentile + " " + reported + " too far above exact " + exact, reported <= exact + exact / 16);
+    }
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(50));
+        LatencyHistogram.Summary summary = histogram.summary();
+        assertEquals(0, summary.getCount());
+        assertEquals(0, summary.getMaxMicros());
+        assertEquals(0, summary.getMeanMicros());
+    }
+
+    @Test
+    public void bucketsCoverEveryValueWithinASixteenth() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long value = i < 1000 ? i : random.nextLong() >>> (1 + random.nextInt(63));
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(bucket >= 0 && bucket < LatencyHistogram.BUCKETS);
+            long highest = LatencyHistogram.highestValue(bucket);
+            assertTrue(value + " above its bucket", highest >= value);
+            assertTrue(value + " in a bucket that is too wide", highest - value <= value / 16);
+            if (bucket > 0) {
+                assertTrue(value + " belongs to the previous bucket", LatencyHistogram.highestValue(bucket - 1) < value);
+            }
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesOfAUniformRange() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[10_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (i + 1) * 1000L;        // 1 us to 10 ms
+            histogram.record(values[i]);
+        }
+        for (double percentile : new double[]{1, 50, 90, 99, 99.9, 100}) {
+            assertPercentile(values, histogram, percentile);
+        }
+        LatencyHistogram.Summary summary = histogram.summary();
+        assertEquals(10_000, summary.getCount());
+        assertEquals(10_000, summary.getMaxMicros());
+        assertEquals(5_000, summary.getMeanMicros());
+        assertTrue(summary.getP50Micros() >= 5_000 && summary.getP50Micros() <= 5_000 + 5_000 / 16);
+    }
+
+    @Test
+    public void percentilesOfASkewedDistribution() {
+        // mostly fast frames with a long tail, like frame times
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(7);
+        long[] values = new long[50_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) (2_000_000 * Math.exp(random.nextGaussian()));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double percentile : new double[]{50, 75, 99, 99.99}) {
+            assertPercentile(values, histogram, percentile);
+        }
+        assertEquals(values[values.length - 1], histogram.percentile(100));
+    }
+
+    @Test
+    public void concurrentRecordingLosesNothing() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int threads = 8, perThread = 100_000;
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            long offset = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    histogram.record(1000 + i % 1000 + offset);
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals((long) threads * perThread, histogram.getCount());
+        // every thread recorded 1000 + offset up to 1999 + offset
+        assertEquals(1999 + threads - 1, histogram.percentile(100));
+        assertEquals(2, histogram.summary().getMaxMicros());
+    }
+
+    @Test
+    public void resetStartsFromZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5_000_000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.percentile(99));
+        histogram.record(1_000);
+        assertEquals(1_000, histogram.percentile(99));
+    }
+}
@@ -0,0 +1,76 @@
+package fireeffect;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * The SWAR engine keeps a packed copy of the heat field, heat written directly into the model
+ * between frames must still reach it.
+ * @author cpdea
+ */
+public class SwarConvolutionTest {
+
+    private static FireModel model(int width, int height, ConvolutionEngine engine) {
+        FireModel model = new FireModel(width, height);
+        model.engine = engine;
+        model.noise = NoiseSource.named("xorshift", 42);
+        return model;
+    }
+
+    private static void step(FireModel model) {
+        model.genRandomFireRowWidth();
+        model.copyFireRowBottom();
+        model.convolution();
+    }
+
+    private static void assertSameHeat(String message, FireModel expected, FireModel actual) {
+        int cells = expected.screenWidth * expected.screenHeight;
+        byte[] want = new byte[cells];
+        byte[] got = new byte[cells];
+        expected.copyHeat(want);
+        actual.copyHeat(got);
+        assertArrayEquals(message, want, got);
+    }
+
+    @Test
+    public void setHeatBetweenFramesReachesThePackedField() {
+        for (int[] size : new int[][]{{5, 9}, {8, 8}, {13, 40}, {64, 48}, {163, 101}}) {
+            FireModel reference = model(size[0], size[1], ConvolutionEngine.REFERENCE);
+            FireModel swar = model(size[0], size[1], ConvolutionEngine.named("swar"));
+            for (int frame = 0; frame < 40; frame++) {
+                if (frame % 7 == 3) {
+                    int x = frame % size[0], y = frame % (size[1] - 1);
+                    reference.setHeat(1, 1, 200);
+                    swar.setHeat(1, 1, 200);
+                    reference.setHeat(x, y, 255);
+                    swar.setHeat(x, y, 255);
+                }
+                step(reference);
+                step(swar);
+                assertSameHeat(size[0] + "x" + size[1] + " frame " + frame, reference, swar);
+            }
+        }
+    }
+
+    @Test
+    public void loadHeatBetweenFramesReachesThePackedField() {
+        int width = 77, height = 50;
+        FireModel reference = model(width, height, ConvolutionEngine.REFERENCE);
+        FireModel swar = model(width, height, ConvolutionEngine.named("swar"));
+        byte[] heat = new byte[width * height];
+        Random random = new Random(11);
+        for (int frame = 0; frame < 30; frame++) {
+            if (frame % 10 == 5) {
+                random.nextBytes(heat);
+                reference.loadHeat(heat);
+                swar.loadHeat(heat);
+            }
+            step(reference);
+            step(swar);
+            assertSameHeat("frame " + frame, reference, swar);
+        }
+    }
+}